@@ -27,6 +27,7 @@ import java.io.InputStream;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
@@ -59,6 +60,10 @@ import net.minecraftforge.gradle.tasks.EtagDownloadTask;
 import net.minecraftforge.gradle.tasks.ExtractConfigTask;
 import net.minecraftforge.gradle.tasks.GenSrgs;
 import net.minecraftforge.gradle.util.GradleConfigurationException;
+import net.minecraftforge.gradle.util.caching.BuildCache;
+import net.minecraftforge.gradle.util.caching.CacheContainer;
+import net.minecraftforge.gradle.util.caching.DirectoryBuildCache;
+import net.minecraftforge.gradle.util.caching.HttpBuildCache;
 import net.minecraftforge.gradle.util.delayed.DelayedFile;
 import net.minecraftforge.gradle.util.delayed.DelayedFileTree;
 import net.minecraftforge.gradle.util.delayed.DelayedString;
@@ -98,6 +103,9 @@ public abstract class BasePlugin<K extends BaseExtension> implements Plugin<Proj
 
         replacer.putReplacement(REPLACE_PROJECT_CACHE_DIR, projectCacheDir.getAbsolutePath());
 
+        // shared outputs of cached tasks, from other machines or builds
+        setupBuildCache();
+
         // extension objects
         Type t = getClass().getGenericSuperclass();
 
@@ -151,6 +159,47 @@ public abstract class BasePlugin<K extends BaseExtension> implements Plugin<Proj
 
     public abstract void applyPlugin();
 
+    /**
+     * Reads the build cache of the cached tasks from the {@value Constants#PROP_BUILD_CACHE} property,
+     * which is either an http(s) url or a directory. Outputs are stored in a directory unless {@value Constants#PROP_BUILD_CACHE_PUSH} is false,
+     * and on a server only if it is true.
+     */
+    private void setupBuildCache()
+    {
+        Object location = project.findProperty(PROP_BUILD_CACHE);
+        if (location == null || location.toString().isEmpty())
+            return;
+
+        BuildCache cache;
+        boolean push;
+        String str = location.toString();
+        if (str.startsWith("http://") || str.startsWith("https://"))
+        {
+            // a shared server only gets what a machine was explicitly set up to upload
+            push = false;
+            try
+            {
+                cache = new HttpBuildCache(str);
+            }
+            catch (MalformedURLException e)
+            {
+                throw new GradleConfigurationException("Invalid build cache url " + str);
+            }
+        }
+        else
+        {
+            push = true;
+            cache = new DirectoryBuildCache(project.file(str));
+        }
+
+        Object pushProp = project.findProperty(PROP_BUILD_CACHE_PUSH);
+        if (pushProp != null)
+            push = Boolean.parseBoolean(pushProp.toString());
+
+        CacheContainer.setBuildCache(project, cache, push);
+        project.getLogger().info("Using the build cache {}", cache);
+    }
+
     private static boolean displayBanner = true;
 
     private void getRemoteJsons()
@@ -34,6 +34,7 @@ import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
@@ -53,7 +54,9 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
 import com.google.common.collect.ImmutableList;
-import com.google.common.io.ByteStreams;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.common.io.CharStreams;
 import com.google.common.io.Files;
 
@@ -79,13 +82,27 @@ public class Constants
     public static final SystemArch SYSTEM_ARCH      = getArch();
     public static final Charset    CHARSET          = StandardCharsets.UTF_8;
     public static final String     HASH_FUNC        = "MD5";
+    /** a non-cryptographic hash, for fingerprints that only this plugin reads */
+    public static final String     HASH_FAST        = "murmur3_128";
     public static final String     USER_AGENT       = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/74.0.3729.169 Safari/537.36";
 
+    private static final ThreadLocal<byte[]> HASH_BUFFER = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue()
+        {
+            return new byte[1 << 16];
+        }
+    };
+
     // extension names
     public static final String EXT_NAME_MC = "minecraft";
 
     public static final String GROUP_FG = "ForgeGradle";
 
+    // project properties
+    public static final String PROP_BUILD_CACHE      = "forgegradle.buildCache";
+    public static final String PROP_BUILD_CACHE_PUSH = "forgegradle.buildCache.push";
+
     @SuppressWarnings("serial")
     public static final Closure<Boolean> CALL_FALSE = new Closure<Boolean>(Constants.class) {
         public Boolean call(Object o)
@@ -134,6 +151,7 @@ public class Constants
     public static final String JAR_CLIENT_FRESH = REPLACE_CACHE_DIR + "/net/minecraft/minecraft/" + REPLACE_MC_VERSION + "/minecraft-" + REPLACE_MC_VERSION + ".jar";
     public static final String DIR_NATIVES      = REPLACE_CACHE_DIR + "/net/minecraft/natives/" + REPLACE_MC_VERSION + "/";
     public static final String DIR_ASSETS       = REPLACE_CACHE_DIR + "/assets";
+    public static final String DIR_DECOMP_CACHE = REPLACE_CACHE_DIR + "/decompCache";
     public static final String JSON_ASSET_INDEX = DIR_ASSETS + "/indexes/" + REPLACE_ASSET_INDEX + ".json";
     public static final String JSON_VERSION     = REPLACE_CACHE_DIR + "/versionJsons" + "/" + REPLACE_MC_VERSION + ".json";
 
@@ -377,11 +395,19 @@ public class Constants
     {
         try
         {
+            Digest digest = newDigest(function);
+
             InputStream fis = new FileInputStream(file);
-            byte[] array = ByteStreams.toByteArray(fis);
-            fis.close();
+            try
+            {
+                update(digest, fis);
+            }
+            finally
+            {
+                fis.close();
+            }
 
-            return hash(array, function);
+            return digest.finish();
         }
         catch (Exception e)
         {
@@ -395,26 +421,24 @@ public class Constants
     {
         try
         {
-            MessageDigest hasher = MessageDigest.getInstance(function);
+            Digest digest = newDigest(function);
 
             ZipInputStream zin = new ZipInputStream(new FileInputStream(file));
-            ZipEntry entry = null;
-            while ((entry = zin.getNextEntry()) != null)
+            try
             {
-                hasher.update(entry.getName().getBytes());
-                hasher.update(ByteStreams.toByteArray(zin));
+                ZipEntry entry = null;
+                while ((entry = zin.getNextEntry()) != null)
+                {
+                    digest.update(entry.getName().getBytes());
+                    update(digest, zin);
+                }
             }
-            zin.close();
-
-            byte[] hash = hasher.digest();
-
-            // convert to string
-            StringBuilder result = new StringBuilder();
-
-            for (byte b : hash) {
-                result.append(Integer.toString((b & 0xff) + 0x100, 16).substring(1));
+            finally
+            {
+                zin.close();
             }
-            return result.toString();
+
+            return digest.finish();
         }
         catch (Exception e)
         {
@@ -438,15 +462,9 @@ public class Constants
     {
         try
         {
-            MessageDigest complete = MessageDigest.getInstance(function);
-            byte[] hash = complete.digest(bytes);
-
-            StringBuilder result = new StringBuilder();
-
-            for (byte b : hash) {
-                result.append(Integer.toString((b & 0xff) + 0x100, 16).substring(1));
-            }
-            return result.toString();
+            Digest digest = newDigest(function);
+            digest.update(bytes);
+            return digest.finish();
         }
         catch (Exception e)
         {
@@ -456,6 +474,48 @@ public class Constants
         return null;
     }
 
+    /**
+     * @param function {@link #HASH_FAST}, or the name of any MessageDigest algorithm
+     */
+    private static Digest newDigest(String function) throws NoSuchAlgorithmException
+    {
+        // Guava's own hashers for the common ones, they need no provider lookup
+        if (HASH_FAST.equals(function))
+            return new Digest(Hashing.murmur3_128().newHasher());
+        else if ("MD5".equalsIgnoreCase(function))
+            return new Digest(Hashing.md5().newHasher());
+        else if ("SHA1".equalsIgnoreCase(function) || "SHA-1".equalsIgnoreCase(function))
+            return new Digest(Hashing.sha1().newHasher());
+        else if ("SHA-256".equalsIgnoreCase(function))
+            return new Digest(Hashing.sha256().newHasher());
+        else if ("SHA-512".equalsIgnoreCase(function))
+            return new Digest(Hashing.sha512().newHasher());
+        else
+            return new Digest(MessageDigest.getInstance(function));
+    }
+
+    /**
+     * Feeds the rest of the stream to the digest, through a buffer that is reused by the thread.
+     */
+    private static void update(Digest digest, InputStream in) throws IOException
+    {
+        byte[] buffer = HASH_BUFFER.get();
+        int read;
+        while ((read = in.read(buffer)) >= 0)
+        {
+            digest.update(buffer, 0, read);
+        }
+    }
+
+    /**
+     * @param project any project of the build
+     * @return where the binary snapshots of the MCP csv files are kept, see {@link net.minecraftforge.gradle.util.data.MappingTable#load(File, File)}
+     */
+    public static File getMappingSnapshotDir(Project project)
+    {
+        return new File(project.getGradle().getGradleUserHomeDir(), "caches/minecraft/mappingSnapshots");
+    }
+
     public static PrintStream getTaskLogStream(Project project, String name)
     {
         final File taskLogs = new File(project.getBuildDir(), "taskLogs");
@@ -551,4 +611,43 @@ public class Constants
         else
             return obj.toString();
     }
+
+    /**
+     * Either a Guava hasher or a MessageDigest, both print the hash as lower case hex.
+     */
+    private static final class Digest
+    {
+        private final Hasher        hasher;
+        private final MessageDigest digest;
+
+        private Digest(Hasher hasher)
+        {
+            this.hasher = hasher;
+            this.digest = null;
+        }
+
+        private Digest(MessageDigest digest)
+        {
+            this.hasher = null;
+            this.digest = digest;
+        }
+
+        private void update(byte[] bytes, int off, int len)
+        {
+            if (hasher != null)
+                hasher.putBytes(bytes, off, len);
+            else
+                digest.update(bytes, off, len);
+        }
+
+        private void update(byte[] bytes)
+        {
+            update(bytes, 0, bytes.length);
+        }
+
+        private String finish()
+        {
+            return hasher != null ? hasher.hash().toString() : HashCode.fromBytes(digest.digest()).toString();
+        }
+    }
 }
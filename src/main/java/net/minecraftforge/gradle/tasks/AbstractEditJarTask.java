@@ -23,7 +23,14 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
 import java.util.zip.ZipEntry;
@@ -31,6 +38,7 @@ import java.util.zip.ZipException;
 import java.util.zip.ZipInputStream;
 
 import net.minecraftforge.gradle.common.Constants;
+import net.minecraftforge.gradle.util.SourceJarHandoff;
 import net.minecraftforge.gradle.util.caching.Cached;
 import net.minecraftforge.gradle.util.caching.CachedTask;
 
@@ -38,6 +46,9 @@ import org.gradle.api.tasks.InputFile;
 import org.gradle.api.tasks.OutputFile;
 import org.gradle.api.tasks.TaskAction;
 
+import com.google.common.base.Throwables;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.io.ByteStreams;
 
@@ -53,6 +64,8 @@ public abstract class AbstractEditJarTask extends CachedTask
     protected File resolvedInJar;
     protected File resolvedOutJar;
 
+    private int    threads = Runtime.getRuntime().availableProcessors();
+
     @TaskAction
     public void doTask() throws Throwable
     {
@@ -80,6 +93,40 @@ public abstract class AbstractEditJarTask extends CachedTask
         doStuffAfter();
     }
 
+    /**
+     * Runs this task over sources that are already in memory, instead of over its input jar.
+     * This allows several stages of the source pipeline to run back to back without writing and reading the jars between them.
+     * @param sourceMap name-&gt;contents for all java files, the contents are replaced with the processed ones
+     * @param resourceMap name-&gt;contents for everything else
+     * @throws Exception if any of the stages fail
+     */
+    public void processInMemory(Map<String, String> sourceMap, Map<String, byte[]> resourceMap) throws Exception
+    {
+        resolvedInJar = getInJar();
+        resolvedOutJar = getOutJar();
+
+        doStuffBefore();
+
+        // same as when reading the jar, META-INF is dropped.
+        Iterator<String> it = Iterators.concat(sourceMap.keySet().iterator(), resourceMap.keySet().iterator());
+        while (it.hasNext())
+        {
+            if (it.next().contains("META-INF"))
+            {
+                it.remove();
+            }
+        }
+
+        sourceMap.putAll(asReadAll(sourceMap));
+
+        if (storeJarInRam())
+        {
+            doStuffMiddle(sourceMap, resourceMap);
+        }
+
+        doStuffAfter();
+    }
+
     /**
      * Do Stuff before the jar is read
      * @throws Exception for convenience
@@ -118,9 +165,35 @@ public abstract class AbstractEditJarTask extends CachedTask
 
     private final void readAndStoreJarInRam(File jar, Map<String, String> sourceMap, Map<String, byte[]> resourceMap) throws Exception
     {
+        // handed over by the task that wrote it?
+        SourceJarHandoff.Contents handoff = SourceJarHandoff.take(jar);
+        if (handoff != null)
+        {
+            for (Map.Entry<String, byte[]> entry : handoff.resources.entrySet())
+            {
+                if (!entry.getKey().contains("META-INF"))
+                {
+                    resourceMap.put(entry.getKey(), entry.getValue());
+                }
+            }
+
+            Map<String, String> sources = Maps.newLinkedHashMap();
+            for (Map.Entry<String, String> entry : handoff.sources.entrySet())
+            {
+                if (!entry.getKey().contains("META-INF"))
+                {
+                    sources.put(entry.getKey(), entry.getValue());
+                }
+            }
+
+            sourceMap.putAll(asReadAll(sources));
+            return;
+        }
+
         ZipInputStream zin = new ZipInputStream(new FileInputStream(jar));
         ZipEntry entry = null;
         String fileStr;
+        Map<String, String> sources = Maps.newLinkedHashMap();
 
         while ((entry = zin.getNextEntry()) != null)
         {
@@ -144,13 +217,13 @@ public abstract class AbstractEditJarTask extends CachedTask
                 // source!
                 fileStr = new String(ByteStreams.toByteArray(zin), Constants.CHARSET);
 
-                fileStr = asRead(entry.getName(), fileStr);
-
-                sourceMap.put(entry.getName(), fileStr);
+                sources.put(entry.getName(), fileStr);
             }
         }
 
         zin.close();
+
+        sourceMap.putAll(asReadAll(sources));
     }
 
     protected static void saveJar(File output, Map<String, String> sourceMap, Map<String, byte[]> resourceMap) throws IOException
@@ -180,6 +253,20 @@ public abstract class AbstractEditJarTask extends CachedTask
 
     private void copyJar(File input, File output) throws Exception
     {
+        // handed over by the task that wrote it?
+        SourceJarHandoff.Contents handoff = SourceJarHandoff.take(input);
+        if (handoff != null)
+        {
+            copyJar(handoff, output);
+            return;
+        }
+
+        if (isParallel())
+        {
+            copyJarParallel(input, output);
+            return;
+        }
+
         // begin reading jar
         ZipInputStream zin = new ZipInputStream(new FileInputStream(input));
         JarOutputStream zout = new JarOutputStream(new FileOutputStream(output));
@@ -219,6 +306,174 @@ public abstract class AbstractEditJarTask extends CachedTask
         zin.close();
     }
 
+    private void copyJar(SourceJarHandoff.Contents input, File output) throws Exception
+    {
+        // sorted, the same as if it was read from the jar.
+        Map<String, Object> entries = Maps.newTreeMap();
+        entries.putAll(input.resources);
+        entries.putAll(input.sources);
+
+        Map<String, String> sources = asReadAll(input.sources);
+
+        JarOutputStream zout = new JarOutputStream(new FileOutputStream(output));
+
+        for (Map.Entry<String, Object> entry : entries.entrySet())
+        {
+            String name = entry.getKey();
+            if (name.contains("META-INF"))
+            {
+                continue;
+            }
+
+            zout.putNextEntry(new JarEntry(name));
+            if (entry.getValue() instanceof String)
+            {
+                zout.write(sources.get(name).getBytes());
+            }
+            else
+            {
+                zout.write((byte[]) entry.getValue());
+            }
+            zout.closeEntry();
+        }
+
+        zout.close();
+    }
+
+    /**
+     * Same as {@link #copyJar(File, File)}, but the sources are processed in parallel.
+     * The whole jar is read first, and written in the same order it was read in.
+     */
+    private void copyJarParallel(File input, File output) throws Exception
+    {
+        List<JarEntry> order = Lists.newArrayList();
+        Map<String, byte[]> resources = Maps.newHashMap();
+        Map<String, String> sources = Maps.newLinkedHashMap();
+
+        ZipInputStream zin = new ZipInputStream(new FileInputStream(input));
+        ZipEntry entry = null;
+
+        while ((entry = zin.getNextEntry()) != null)
+        {
+            if (entry.getName().contains("META-INF"))
+            {
+                continue;
+            }
+
+            if (entry.isDirectory() || !entry.getName().endsWith(".java"))
+            {
+                order.add(new JarEntry(entry));
+                resources.put(entry.getName(), ByteStreams.toByteArray(zin));
+            }
+            else
+            {
+                order.add(new JarEntry(entry.getName()));
+                sources.put(entry.getName(), new String(ByteStreams.toByteArray(zin), Constants.CHARSET));
+            }
+        }
+
+        zin.close();
+
+        sources = asReadAll(sources);
+
+        JarOutputStream zout = new JarOutputStream(new FileOutputStream(output));
+        for (JarEntry jarEntry : order)
+        {
+            try
+            {
+                zout.putNextEntry(jarEntry);
+                String source = sources.get(jarEntry.getName());
+                zout.write(source != null ? source.getBytes() : resources.get(jarEntry.getName()));
+                zout.closeEntry();
+            }
+            catch (ZipException ex)
+            {
+            }
+        }
+        zout.close();
+    }
+
+    /**
+     * Calls {@link #asRead(String, String)} for every source, on multiple threads if the task allows it.
+     * @param sources name-&gt;contents of the sources
+     * @return name-&gt;new contents, in the same order
+     * @throws Exception if asRead failed for any of the sources
+     */
+    private Map<String, String> asReadAll(Map<String, String> sources) throws Exception
+    {
+        Map<String, String> out = Maps.newLinkedHashMap();
+
+        if (!isParallel())
+        {
+            for (Map.Entry<String, String> entry : sources.entrySet())
+            {
+                out.put(entry.getKey(), asRead(entry.getKey(), entry.getValue()));
+            }
+            return out;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(getThreads());
+        try
+        {
+            Map<String, Future<String>> futures = Maps.newLinkedHashMap();
+            for (final Map.Entry<String, String> entry : sources.entrySet())
+            {
+                futures.put(entry.getKey(), executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception
+                    {
+                        return asRead(entry.getKey(), entry.getValue());
+                    }
+                }));
+            }
+
+            for (Map.Entry<String, Future<String>> entry : futures.entrySet())
+            {
+                out.put(entry.getKey(), entry.getValue().get());
+            }
+        }
+        catch (ExecutionException e)
+        {
+            Throwables.propagateIfInstanceOf(e.getCause(), Exception.class);
+            throw Throwables.propagate(e.getCause());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        return out;
+    }
+
+    private boolean isParallel()
+    {
+        return getThreads() > 1 && isAsReadThreadSafe();
+    }
+
+    /**
+     * Whether {@link #asRead(String, String)} may be called for several files at the same time.
+     * Only tasks that return true here are processed in parallel.
+     * @return whether asRead is thread safe
+     */
+    protected boolean isAsReadThreadSafe()
+    {
+        return false;
+    }
+
+    /**
+     * The amount of threads the sources are processed on, if {@link #isAsReadThreadSafe()} allows it.
+     * @return the amount of threads
+     */
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    public void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
+
     public File getInJar()
     {
         return getProject().file(inJar);
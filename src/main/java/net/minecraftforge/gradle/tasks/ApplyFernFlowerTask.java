@@ -19,30 +19,50 @@
  */
 package net.minecraftforge.gradle.tasks;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
+import java.io.PrintStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.jar.JarOutputStream;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.Manifest;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
 import net.minecraftforge.gradle.common.Constants;
+import net.minecraftforge.gradle.util.SourceJarHandoff;
+import net.minecraftforge.gradle.util.ZipFilePool;
 import net.minecraftforge.gradle.util.caching.Cached;
 import net.minecraftforge.gradle.util.caching.CachedTask;
 
 import org.gradle.api.file.FileCollection;
 import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.InputFiles;
 import org.gradle.api.tasks.OutputFile;
 import org.gradle.api.tasks.TaskAction;
 import org.jetbrains.java.decompiler.code.CodeConstants;
@@ -58,6 +78,14 @@ import org.jetbrains.java.decompiler.main.extern.IVariableNamingFactory;
 import org.jetbrains.java.decompiler.struct.StructMethod;
 import org.jetbrains.java.decompiler.util.InterpreterUtil;
 import org.jetbrains.java.decompiler.util.JADNameProvider;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.commons.Remapper;
+import org.objectweb.asm.commons.RemappingClassAdapter;
+import org.objectweb.asm.tree.ClassNode;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Iterables;
+import com.google.common.io.ByteStreams;
 
 public class ApplyFernFlowerTask extends CachedTask {
     @InputFile
@@ -69,14 +97,146 @@ public class ApplyFernFlowerTask extends CachedTask {
 
     private FileCollection         classpath;
 
+    private int                    threads = 1;
+
+    private Object                 decompCacheDir;
+
+    private boolean                inMemoryHandoff = false;
+
+    private final List<AbstractEditJarTask> fusedStages = new ArrayList<AbstractEditJarTask>();
+
+    private boolean                writeIntermediates = false;
+
+    /** Bump whenever the decompiler or its settings change in a way the cache key does not cover. */
+    private static final String    CACHE_VERSION = "3";
+
     @TaskAction
-    public void applyFernFlower() throws IOException {
+    public void applyFernFlower() throws Exception {
         final File in = getInJar();
         final File out = getOutJar();
 
-        final File tempDir = this.getTemporaryDir();
-        final File tempJar = new File(this.getTemporaryDir(), in.getName());
+        PrintStream log = Constants.getTaskLogStream(getProject(), getName() + ".log");
+
+        // decompiled sources, sorted so the serial and parallel modes write out the same jar
+        Map<String, String> sources = new ConcurrentSkipListMap<String, String>();
+        Map<String, byte[]> resources;
+
+        // every archive stays open for the whole run, instead of being opened again for every class
+        ZipFilePool zips = new ZipFilePool(Iterables.size(classpath) + getThreads() + 1);
+        try {
+            // top level class -> its class entries
+            Map<String, List<String>> groups = readClassGroups(zips, in);
+            Set<String> todo = new TreeSet<String>(groups.keySet());
+
+            // grab everything that was already decompiled from the exact same input
+            File cacheDir = getDecompCacheDir();
+            Map<String, String> cacheKeys = null;
+            if (cacheDir != null) {
+                cacheKeys = getCacheKeys(zips, in, groups);
+                loadCached(cacheDir, cacheKeys, sources, todo);
+                getLogger().lifecycle("{} of {} classes found in the decompilation cache", groups.size() - todo.size(), groups.size());
+            }
+
+            if (todo.size() == groups.size() && getThreads() <= 1) {
+                decompile(in, null, sources, new PrintStreamLogger(log), zips);
+            } else if (!todo.isEmpty()) {
+                decompileShards(in, writeShards(zips, in, groups, todo, getThreads()), sources, log, zips);
+            }
+
+            if (cacheDir != null) {
+                saveCached(cacheDir, cacheKeys, groups, todo, sources);
+            }
+
+            // directories and resources are taken over from the input jar
+            resources = readResources(zips, in);
+        } finally {
+            zips.close();
+            getLogger().info("Decompiler archive access: {}", zips);
+        }
+
+        if (!fusedStages.isEmpty()) {
+            sources = new TreeMap<String, String>(sources);
+            for (AbstractEditJarTask stage : fusedStages) {
+                if (isWriteIntermediates()) {
+                    writeJar(sources, resources, stage.getInJar());
+                }
+
+                getLogger().lifecycle("Running {} in memory", stage.getName());
+                stage.processInMemory(sources, resources);
+            }
+        }
+
+        writeJar(sources, resources, out);
+
+        if (isInMemoryHandoff()) {
+            SourceJarHandoff.offer(out, sources, resources);
+        }
+    }
+
+    /**
+     * Reads all directories and resources of the jar.
+     * @return name -&gt; contents, directories have no contents
+     */
+    private static Map<String, byte[]> readResources(ZipFilePool zips, File in) throws IOException {
+        Map<String, byte[]> resources = new TreeMap<String, byte[]>();
+
+        ZipFile zip = zips.acquire(in);
+        try {
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                if (entry.isDirectory()) {
+                    resources.put(entry.getName(), new byte[0]);
+                } else if (!entry.getName().endsWith(".class")) {
+                    resources.put(entry.getName(), readEntry(zip, entry.getName()));
+                }
+            }
+        } finally {
+            zips.release(in);
+        }
+
+        return resources;
+    }
+
+    /**
+     * Writes the sources and resources to the jar. Everything is written sorted by name, regardless of the order FernFlower returned it in.
+     * The jar is written next to its final location, and only moved there once it is complete.
+     */
+    private static void writeJar(Map<String, String> sources, Map<String, byte[]> resources, File out) throws IOException {
+        File tempJar = new File(out.getParentFile(), out.getName() + ".tmp");
+        out.getParentFile().mkdirs();
+
+        Set<String> names = new TreeSet<String>(resources.keySet());
+        names.addAll(sources.keySet());
+
+        ZipOutputStream zout = new ZipOutputStream(new FileOutputStream(tempJar));
+        try {
+            for (String name : names) {
+                zout.putNextEntry(new ZipEntry(name));
+
+                String content = sources.get(name);
+                if (content != null) {
+                    zout.write(content.getBytes(Constants.CHARSET));
+                } else {
+                    zout.write(resources.get(name));
+                }
+
+                zout.closeEntry();
+            }
+        } finally {
+            zout.close();
+        }
+
+        moveReplacing(tempJar, out);
+    }
+
+    private static void moveReplacing(File from, File to) throws IOException {
+        try {
+            java.nio.file.Files.move(from.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            java.nio.file.Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
 
+    private static Map<String, Object> getDecompileOptions() {
         Map<String, Object> mapOptions = new HashMap<String, Object>();
         mapOptions.put(IFernflowerPreferences.DECOMPILE_INNER, "1");
         mapOptions.put(IFernflowerPreferences.DECOMPILE_GENERIC_SIGNATURES, "1");
@@ -89,17 +249,369 @@ public class ApplyFernFlowerTask extends CachedTask {
         mapOptions.put(IFernflowerPreferences.UNIT_TEST_MODE, "0");
         mapOptions.put(IFernflowerPreferences.MAX_PROCESSING_METHOD, "0");
         mapOptions.put(DecompilerContext.RENAMER_FACTORY, AdvancedJadRenamerFactory.class.getName());
+        return mapOptions;
+    }
 
-        PrintStreamLogger logger = new PrintStreamLogger(Constants.getTaskLogStream(getProject(), getName() + ".log"));
-        BaseDecompiler decompiler = new BaseDecompiler(new ByteCodeProvider(), new ArtifactSaver(tempDir), mapOptions, logger);
-
-        decompiler.addSpace(in, true);
-        for (File library : classpath) {
+    /**
+     * Runs a single FernFlower instance over the given jar.
+     * @param own the jar whose classes are decompiled
+     * @param library if not null, this jar is added to the classpath before the own jar. Used when the own jar is only a shard of it.
+     * @param sources decompiled sources are put in here
+     * @param logger where FernFlower logs to
+     * @param zips the archives the bytecode is read from
+     */
+    private void decompile(File own, File library, Map<String, String> sources, IFernflowerLogger logger, ZipFilePool zips) {
+        BaseDecompiler decompiler = new BaseDecompiler(new ByteCodeProvider(zips), new ArtifactSaver(sources), getDecompileOptions(), logger);
+
+        // the library has to go first, so that the own classes replace their copies in the structure context
+        if (library != null) {
             decompiler.addSpace(library, false);
         }
+        decompiler.addSpace(own, true);
+        for (File lib : classpath) {
+            decompiler.addSpace(lib, false);
+        }
 
         decompiler.decompileContext();
-        Constants.copyFile(tempJar, out);
+    }
+
+    /**
+     * Decompiles each shard on its own FernFlower instance, in parallel.
+     * Every instance sees the entire input jar as a library, so the output matches the serial decompilation.
+     * The loggers keep state, so every instance logs into its own buffer, and the buffers are written to the log in shard order.
+     */
+    private void decompileShards(final File in, List<File> shards, final Map<String, String> sources, PrintStream log, final ZipFilePool zips) {
+        if (shards.size() == 1) {
+            decompile(shards.get(0), in, sources, new PrintStreamLogger(log), zips);
+            return;
+        }
+
+        getLogger().lifecycle("Decompiling with {} threads", shards.size());
+
+        ExecutorService executor = Executors.newFixedThreadPool(shards.size());
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>(shards.size());
+            List<ByteArrayOutputStream> logs = new ArrayList<ByteArrayOutputStream>(shards.size());
+            for (final File shard : shards) {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                logs.add(buffer);
+
+                final IFernflowerLogger logger = new PrintStreamLogger(new PrintStream(buffer, true));
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        decompile(shard, in, sources, logger, zips);
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            for (ByteArrayOutputStream buffer : logs) {
+                buffer.writeTo(log);
+            }
+            log.flush();
+        } catch (IOException e) {
+            Throwables.propagate(e);
+        } catch (InterruptedException e) {
+            Throwables.propagate(e);
+        } catch (ExecutionException e) {
+            Throwables.propagate(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Groups the classes of the jar by their top level class. Inner classes are always decompiled together with their outer class.
+     * @return top level class name -&gt; class entries, sorted by name
+     */
+    private static Map<String, List<String>> readClassGroups(ZipFilePool zips, File in) throws IOException {
+        Map<String, List<String>> groups = new TreeMap<String, List<String>>();
+
+        ZipFile zip = zips.acquire(in);
+        try {
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                String name = entry.getName();
+                if (entry.isDirectory() || !name.endsWith(".class")) {
+                    continue;
+                }
+
+                String outer = name.substring(0, name.length() - 6);
+                int idx = outer.indexOf('$', outer.lastIndexOf('/') + 1);
+                if (idx > 0) {
+                    outer = outer.substring(0, idx);
+                }
+
+                List<String> group = groups.get(outer);
+                if (group == null) {
+                    groups.put(outer, group = new ArrayList<String>());
+                }
+                group.add(name);
+            }
+        } finally {
+            zips.release(in);
+        }
+
+        return groups;
+    }
+
+    /**
+     * Writes the selected class groups to at most shardCount jars of roughly equal size.
+     * @return the shard jars, in the temporary directory of the task
+     */
+    private List<File> writeShards(ZipFilePool zips, File in, Map<String, List<String>> groups, Set<String> selected, int shardCount) throws IOException {
+        ZipFile zip = zips.acquire(in);
+        try {
+            final Map<String, Long> groupSizes = new HashMap<String, Long>();
+            for (String outer : selected) {
+                long size = 0;
+                for (String name : groups.get(outer)) {
+                    size += zip.getEntry(name).getSize();
+                }
+                groupSizes.put(outer, size);
+            }
+
+            // biggest first, then always into the smallest shard.
+            List<String> order = new ArrayList<String>(selected);
+            Collections.sort(order, new Comparator<String>() {
+                @Override
+                public int compare(String o1, String o2) {
+                    int cmp = groupSizes.get(o2).compareTo(groupSizes.get(o1));
+                    return cmp != 0 ? cmp : o1.compareTo(o2);
+                }
+            });
+
+            int count = Math.max(1, Math.min(shardCount, order.size()));
+            List<List<String>> shardEntries = new ArrayList<List<String>>(count);
+            long[] shardSizes = new long[count];
+            for (int i = 0; i < count; i++) {
+                shardEntries.add(new ArrayList<String>());
+            }
+
+            for (String outer : order) {
+                int smallest = 0;
+                for (int i = 1; i < count; i++) {
+                    if (shardSizes[i] < shardSizes[smallest]) {
+                        smallest = i;
+                    }
+                }
+                shardEntries.get(smallest).addAll(groups.get(outer));
+                shardSizes[smallest] += groupSizes.get(outer);
+            }
+
+            List<File> shards = new ArrayList<File>(count);
+            for (int i = 0; i < count; i++) {
+                File shard = new File(getTemporaryDir(), "shard" + i + ".jar");
+                ZipOutputStream zout = new ZipOutputStream(new FileOutputStream(shard));
+                try {
+                    for (String name : shardEntries.get(i)) {
+                        zout.putNextEntry(new ZipEntry(name));
+                        InputStream stream = zip.getInputStream(zip.getEntry(name));
+                        ByteStreams.copy(stream, zout);
+                        stream.close();
+                        zout.closeEntry();
+                    }
+                } finally {
+                    zout.close();
+                }
+                shards.add(shard);
+            }
+
+            return shards;
+        } finally {
+            zips.release(in);
+        }
+    }
+
+    /**
+     * Computes the decompilation cache key of every class group.
+     * The key covers the bytes of every class in the group, the bytes of every class of the jar it references
+     * along with all of their supertypes, the contents of the classpath and the FernFlower options.
+     * A different FernFlower build is not covered, that is what {@link #CACHE_VERSION} is for.
+     * @return top level class name -&gt; cache key
+     */
+    private Map<String, String> getCacheKeys(ZipFilePool zips, File in, Map<String, List<String>> groups) throws IOException {
+        StringBuilder base = new StringBuilder(CACHE_VERSION);
+        base.append(new TreeMap<String, Object>(getDecompileOptions()));
+
+        // libraries by their contents, unchanged ones are not read again
+        for (File lib : classpath) {
+            base.append(lib.getName()).append(hashFiles(lib)).append(';');
+        }
+
+        // class name -> hash, supertypes and everything it references
+        Map<String, String> classHashes = new HashMap<String, String>();
+        Map<String, List<String>> parents = new HashMap<String, List<String>>();
+        Map<String, Set<String>> references = new HashMap<String, Set<String>>();
+
+        ZipFile zip = zips.acquire(in);
+        try {
+            for (List<String> entries : groups.values()) {
+                for (String name : entries) {
+                    byte[] data = readEntry(zip, name);
+                    String className = name.substring(0, name.length() - ".class".length());
+                    classHashes.put(className, Constants.hash(data, Constants.HASH_FAST));
+
+                    ClassReader reader = new ClassReader(data);
+                    List<String> supers = new ArrayList<String>();
+                    if (reader.getSuperName() != null) {
+                        supers.add(reader.getSuperName());
+                    }
+                    Collections.addAll(supers, reader.getInterfaces());
+                    parents.put(className, supers);
+                    references.put(className, getReferences(reader));
+                }
+            }
+        } finally {
+            zips.release(in);
+        }
+
+        Map<String, String> keys = new HashMap<String, String>();
+        for (Map.Entry<String, List<String>> group : groups.entrySet()) {
+            StringBuilder key = new StringBuilder(base);
+            Set<String> referenced = new TreeSet<String>();
+
+            for (String name : group.getValue()) {
+                String className = name.substring(0, name.length() - ".class".length());
+                key.append(name).append('=').append(classHashes.get(className)).append(';');
+                referenced.addAll(references.get(className));
+            }
+
+            // FernFlower looks up the whole hierarchy of whatever is used, not just the direct supertypes
+            Deque<String> todo = new ArrayDeque<String>(referenced);
+            while (!todo.isEmpty()) {
+                List<String> supers = parents.get(todo.pop());
+                if (supers == null) {
+                    continue;
+                }
+                for (String sup : supers) {
+                    if (referenced.add(sup)) {
+                        todo.add(sup);
+                    }
+                }
+            }
+
+            // anything not in the jar comes from the classpath, which is already in the key
+            for (String ref : referenced) {
+                String hash = classHashes.get(ref);
+                if (hash != null) {
+                    key.append(ref).append('=').append(hash).append(';');
+                }
+            }
+
+            keys.put(group.getKey(), Constants.hash(key.toString()));
+        }
+
+        return keys;
+    }
+
+    /**
+     * @return the internal name of every class the class refers to, in its code, members, signatures and annotations
+     */
+    private static Set<String> getReferences(ClassReader reader) {
+        final Set<String> references = new HashSet<String>();
+        reader.accept(new RemappingClassAdapter(new ClassNode(), new Remapper() {
+            @Override
+            public String map(String typeName) {
+                references.add(typeName);
+                return typeName;
+            }
+        }), ClassReader.SKIP_FRAMES);
+        return references;
+    }
+
+    private static byte[] readEntry(ZipFile zip, String name) throws IOException {
+        ZipEntry entry = zip.getEntry(name);
+        if (entry == null) {
+            return null;
+        }
+
+        InputStream stream = zip.getInputStream(entry);
+        try {
+            return ByteStreams.toByteArray(stream);
+        } finally {
+            stream.close();
+        }
+    }
+
+    private static File getCacheFile(File cacheDir, String key) {
+        return new File(cacheDir, key.substring(0, 2) + "/" + key + ".zip");
+    }
+
+    /**
+     * Reads the sources of every group that has a cache entry, and removes those groups from the todo set.
+     */
+    private void loadCached(File cacheDir, Map<String, String> keys, Map<String, String> sources, Set<String> todo) {
+        Iterator<String> it = todo.iterator();
+        while (it.hasNext()) {
+            File cached = getCacheFile(cacheDir, keys.get(it.next()));
+            if (!cached.isFile()) {
+                continue;
+            }
+
+            try {
+                Map<String, String> found = new HashMap<String, String>();
+                ZipInputStream zin = new ZipInputStream(new FileInputStream(cached));
+                try {
+                    ZipEntry entry;
+                    while ((entry = zin.getNextEntry()) != null) {
+                        found.put(entry.getName(), new String(ByteStreams.toByteArray(zin), Constants.CHARSET));
+                    }
+                } finally {
+                    zin.close();
+                }
+
+                sources.putAll(found);
+                it.remove();
+            } catch (IOException e) {
+                // broken entry, just decompile it again.
+                getLogger().info("Could not read decompilation cache entry " + cached, e);
+                cached.delete();
+            }
+        }
+    }
+
+    /**
+     * Stores the sources of the freshly decompiled groups in the cache.
+     */
+    private void saveCached(File cacheDir, Map<String, String> keys, Map<String, List<String>> groups, Set<String> decompiled, Map<String, String> sources) throws IOException {
+        for (String outer : decompiled) {
+            List<String> names = new ArrayList<String>();
+            for (String cls : groups.get(outer)) {
+                String name = cls.substring(0, cls.length() - 6) + ".java";
+                if (sources.containsKey(name)) {
+                    names.add(name);
+                }
+            }
+
+            // nothing came out of it? dont remember that.
+            if (names.isEmpty()) {
+                continue;
+            }
+
+            File cached = getCacheFile(cacheDir, keys.get(outer));
+            File temp = new File(cached.getPath() + ".tmp");
+            cached.getParentFile().mkdirs();
+
+            ZipOutputStream zout = new ZipOutputStream(new FileOutputStream(temp));
+            try {
+                for (String name : names) {
+                    zout.putNextEntry(new ZipEntry(name));
+                    zout.write(sources.get(name).getBytes(Constants.CHARSET));
+                    zout.closeEntry();
+                }
+            } finally {
+                zout.close();
+            }
+
+            cached.delete();
+            if (!temp.renameTo(cached)) {
+                temp.delete();
+            }
+        }
     }
 
     public static class AdvancedJadRenamerFactory implements IVariableNamingFactory {
@@ -135,166 +647,85 @@ public class ApplyFernFlowerTask extends CachedTask {
         }
     }
 
-    class ByteCodeProvider implements IBytecodeProvider {
+    static class ByteCodeProvider implements IBytecodeProvider {
+        private final ZipFilePool zips;
+
+        public ByteCodeProvider(ZipFilePool zips) {
+            this.zips = zips;
+        }
+
         @Override
         public byte[] getBytecode(String externalPath, String internalPath) throws IOException {
             File file = new File(externalPath);
             if (internalPath == null) {
                 return InterpreterUtil.getBytes(file);
             } else {
-                ZipFile archive = new ZipFile(file);
-                try {
-                    ZipEntry entry = archive.getEntry(internalPath);
-                    if (entry == null) {
-                        throw new IOException("Entry not found: " + internalPath);
-                    }
-                    return InterpreterUtil.getBytes(archive, entry);
-                } finally {
-                    archive.close();
+                byte[] data = zips.read(file, internalPath);
+                if (data == null) {
+                    throw new IOException("Entry not found: " + internalPath);
                 }
+                return data;
             }
         }
     }
 
-    class ArtifactSaver implements IResultSaver {
-        private final Map<String, ZipOutputStream> mapArchiveStreams = new HashMap<String, ZipOutputStream>();
-        private final Map<String, Set<String>> mapArchiveEntries = new HashMap<String, Set<String>>();
-        private final File root;
-        public ArtifactSaver(File tempDir) {
-            this.root = tempDir;
-        }
+    /**
+     * Collects the decompiled sources of the jar.
+     * Directories and resources are copied by {@link #readResources(ZipFilePool, File)} instead, so those calls are ignored.
+     */
+    static class ArtifactSaver implements IResultSaver {
+        private final Map<String, String> sources;
 
-        private String getAbsolutePath(String path) {
-            return new File(root, path).getAbsolutePath();
+        public ArtifactSaver(Map<String, String> sources) {
+            this.sources = sources;
         }
 
-
         @Override
         public void saveFolder(String path) {
-            File dir = new File(getAbsolutePath(path));
-            if (!(dir.mkdirs() || dir.isDirectory())) {
-                throw new RuntimeException("Cannot create directory " + dir);
-            }
+            // only jars are decompiled
         }
 
         @Override
         public void copyFile(String source, String path, String entryName) {
-            try {
-                InterpreterUtil.copyFile(new File(source), new File(getAbsolutePath(path), entryName));
-            } catch (IOException ex) {
-                DecompilerContext.getLogger().writeMessage("Cannot copy " + source + " to " + entryName, ex);
-            }
+            // only jars are decompiled
         }
 
         @Override
         public void saveClassFile(String path, String qualifiedName, String entryName, String content, int[] mapping) {
-            File file = new File(getAbsolutePath(path), entryName);
-            try {
-                Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF8");
-                try {
-                    out.write(content);
-                } finally {
-                    out.close();
-                }
-            } catch (IOException ex) {
-                DecompilerContext.getLogger().writeMessage("Cannot write class file " + file, ex);
-            }
+            // only jars are decompiled
         }
 
         @Override
         public void createArchive(String path, String archiveName, Manifest manifest) {
-            File file = new File(getAbsolutePath(path), archiveName);
-            try {
-                if (!(file.createNewFile() || file.isFile())) {
-                    throw new IOException("Cannot create file " + file);
-                }
-
-                FileOutputStream fileStream = new FileOutputStream(file);
-                ZipOutputStream zipStream = manifest != null ? new JarOutputStream(fileStream, manifest) : new ZipOutputStream(fileStream);
-                mapArchiveStreams.put(file.getPath(), zipStream);
-            } catch (IOException ex) {
-                DecompilerContext.getLogger().writeMessage("Cannot create archive " + file, ex);
-            }
+            // the output jar is written afterwards
         }
 
         @Override
         public void saveDirEntry(String path, String archiveName, String entryName) {
-            saveClassEntry(path, archiveName, null, entryName, null);
+            // copied from the input jar
         }
 
         @Override
         public void copyEntry(String source, String path, String archiveName, String entryName) {
-            String file = new File(getAbsolutePath(path), archiveName).getPath();
-
-            if (!checkEntry(entryName, file)) {
-                return;
-            }
-
-            try {
-                ZipFile srcArchive = new ZipFile(new File(source));
-                try {
-                    ZipEntry entry = srcArchive.getEntry(entryName);
-                    if (entry != null) {
-                        InputStream in = srcArchive.getInputStream(entry);
-                        ZipOutputStream out = mapArchiveStreams.get(file);
-                        out.putNextEntry(new ZipEntry(entryName));
-                        InterpreterUtil.copyStream(in, out);
-                        in.close();
-                    }
-                } finally {
-                    srcArchive.close();
-                }
-            } catch (IOException ex) {
-                String message = "Cannot copy entry " + entryName + " from " + source + " to " + file;
-                DecompilerContext.getLogger().writeMessage(message, ex);
-            }
+            // copied from the input jar
         }
 
         @Override
         public void saveClassEntry(String path, String archiveName, String qualifiedName, String entryName, String content) {
-            String file = new File(getAbsolutePath(path), archiveName).getPath();
-
-            if (!checkEntry(entryName, file)) {
+            if (content == null) {
                 return;
             }
 
-            try {
-                ZipOutputStream out = mapArchiveStreams.get(file);
-                out.putNextEntry(new ZipEntry(entryName));
-                if (content != null) {
-                    out.write(content.getBytes("UTF-8"));
-                }
-            } catch (IOException ex) {
-                String message = "Cannot write entry " + entryName + " to " + file;
-                DecompilerContext.getLogger().writeMessage(message, ex);
-            }
-        }
-
-        private boolean checkEntry(String entryName, String file) {
-            Set<String> set = mapArchiveEntries.get(file);
-            if (set == null) {
-                mapArchiveEntries.put(file, set = new HashSet<String>());
-            }
-
-            boolean added = set.add(entryName);
-            if (!added) {
-                String message = "Zip entry " + entryName + " already exists in " + file;
+            if (sources.put(entryName, content) != null) {
+                String message = "Zip entry " + entryName + " already exists in " + archiveName;
                 DecompilerContext.getLogger().writeMessage(message, IFernflowerLogger.Severity.WARN);
             }
-            return added;
         }
 
         @Override
         public void closeArchive(String path, String archiveName) {
-            String file = new File(getAbsolutePath(path), archiveName).getPath();
-            try {
-                mapArchiveEntries.remove(file);
-                mapArchiveStreams.remove(file).close();
-            } catch (IOException ex) {
-                DecompilerContext.getLogger().writeMessage("Cannot close " + file, IFernflowerLogger.Severity.WARN);
-            }
+            // the output jar is written afterwards
         }
-
     }
 
     public File getInJar() {
@@ -323,5 +754,96 @@ public class ApplyFernFlowerTask extends CachedTask {
         this.classpath = classpath;
     }
 
+    /**
+     * The number of FernFlower instances to decompile with. Anything above 1 splits the jar into shards that
+     * are decompiled in parallel, at the cost of every instance holding its own copy of the classpath.
+     * @return number of threads
+     */
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    public void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
+
+    /**
+     * The directory where the decompiled source of each class is cached, keyed by the hash of its bytecode.
+     * Only classes without a cache entry are decompiled. If null, everything is always decompiled.
+     * @return the cache directory, or null
+     */
+    public File getDecompCacheDir()
+    {
+        return decompCacheDir == null ? null : getProject().file(decompCacheDir);
+    }
+
+    public void setDecompCacheDir(Object decompCacheDir)
+    {
+        this.decompCacheDir = decompCacheDir;
+    }
+
+    /**
+     * Whether the decompiled sources are also handed to the next task in memory, see {@link SourceJarHandoff}.
+     * Only useful if the task reading the output jar runs in the same build.
+     * @return whether the sources are handed off
+     */
+    public boolean isInMemoryHandoff()
+    {
+        return inMemoryHandoff;
+    }
+
+    public void setInMemoryHandoff(boolean inMemoryHandoff)
+    {
+        this.inMemoryHandoff = inMemoryHandoff;
+    }
+
+    /**
+     * Adds a task that is run over the decompiled sources in memory, right after decompiling.
+     * Fused stages run in the order they were added, and the output jar contains their result.
+     * The stages themselves should be disabled, since their work is done here.
+     * @param stage the fused task
+     */
+    public void addFusedStage(AbstractEditJarTask stage)
+    {
+        fusedStages.add(stage);
+    }
+
+    public List<AbstractEditJarTask> getFusedStages()
+    {
+        return fusedStages;
+    }
+
+    /**
+     * The inputs of the fused stages, apart from their input jars which are never read.
+     * @return the files the fused stages depend on
+     */
+    @InputFiles
+    public FileCollection getFusedInputs()
+    {
+        FileCollection files = getProject().files();
+        for (AbstractEditJarTask stage : fusedStages)
+        {
+            files = files.plus(stage.getInputs().getFiles().minus(getProject().files(stage.getInJar())));
+        }
+        return files;
+    }
+
+    /**
+     * Whether the input jar of every fused stage is written as well, the same way it would be without fusing.
+     * Only useful for debugging the stages.
+     * @return whether intermediate jars are written
+     */
+    public boolean isWriteIntermediates()
+    {
+        return writeIntermediates;
+    }
+
+    public void setWriteIntermediates(boolean writeIntermediates)
+    {
+        this.writeIntermediates = writeIntermediates;
+    }
+
 
 }
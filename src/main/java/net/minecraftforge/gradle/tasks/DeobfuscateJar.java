@@ -20,29 +20,58 @@
 package net.minecraftforge.gradle.tasks;
 
 import com.google.common.base.Joiner;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
-import com.google.common.io.LineProcessor;
 import de.oceanlabs.mcp.mcinjector.LVTNaming;
 import de.oceanlabs.mcp.mcinjector.MCInjectorImpl;
 import groovy.lang.Closure;
 import net.md_5.specialsource.*;
-import net.md_5.specialsource.provider.JarProvider;
-import net.md_5.specialsource.provider.JointProvider;
+import net.md_5.specialsource.repo.ClassRepo;
 import net.minecraftforge.gradle.common.Constants;
 import net.minecraftforge.gradle.util.caching.Cached;
 import net.minecraftforge.gradle.util.caching.CachedTask;
+import net.minecraftforge.gradle.util.data.MappingTable;
 import net.minecraftforge.gradle.util.json.JsonFactory;
 import net.minecraftforge.gradle.util.json.MCInjectorStruct;
 import net.minecraftforge.gradle.util.json.MCInjectorStruct.InnerClass;
 import org.gradle.api.tasks.*;
-
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.TypePath;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.InputStream;
+import java.util.Enumeration;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 public class DeobfuscateJar extends CachedTask
@@ -73,6 +102,8 @@ public class DeobfuscateJar extends CachedTask
 
     private Object            log;
 
+    private int               threads       = Runtime.getRuntime().availableProcessors();
+
     @TaskAction
     public void doTask() throws IOException
     {
@@ -88,7 +119,7 @@ public class DeobfuscateJar extends CachedTask
         if (log == null)
             log = new File(getTemporaryDir(), "exceptor.log");
 
-        // apply exceptor
+        // apply exceptor, a pass of its own over the jar written above, MCInjector only works on jar files
         getLogger().lifecycle("Applying Exceptor...");
         applyExceptor(tempObfJar, out, getExceptorCfg(), log);
     }
@@ -100,25 +131,135 @@ public class DeobfuscateJar extends CachedTask
         mapping.loadMappings(srg);
 
         // load in ATs
-        ErroringRemappingAccessMap accessMap = new ErroringRemappingAccessMap(new File[] { getMethodCsv(), getFieldCsv() });
+        final ErroringRemappingAccessMap accessMap = new ErroringRemappingAccessMap(new File[] { getMethodCsv(), getFieldCsv() }, Constants.getMappingSnapshotDir(getProject()));
 
-        // make a processor out of the ATS and mappings.
-        RemapperProcessor srgProcessor = new RemapperProcessor(null, mapping, null);
-
-        RemapperProcessor atProcessor = new RemapperProcessor(null, null, accessMap);
-        // make remapper
-        JarRemapper remapper = new JarRemapper(srgProcessor, mapping, atProcessor);
+        // make remapper, the reflection and AT processing is chained onto it for every class
+        final JarRemapper remapper = new JarRemapper(mapping);
 
         // load jar
-        Jar input = Jar.init(inJar);
+        Map<String, byte[]> entries = readJar(inJar);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, getThreads()));
+        try
+        {
+            // the parents of every class are put in up front, SpecialSource writes to the map when it has to ask a provider
+            final ClassIndex index = ClassIndex.build(entries, executor);
+            mapping.setInheritanceMap(index.toInheritanceMap());
+
+            // remap classes
+            Map<String, Future<byte[]>> futures = Maps.newLinkedHashMap();
+            for (final Map.Entry<String, byte[]> entry : entries.entrySet())
+            {
+                if (!entry.getKey().endsWith(".class"))
+                    continue;
+
+                futures.put(entry.getKey(), executor.submit(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call()
+                    {
+                        return remapClass(entry.getValue(), remapper, index, accessMap);
+                    }
+                }));
+            }
 
-        // ensure that inheritance provider is used
-        JointProvider inheritanceProviders = new JointProvider();
-        inheritanceProviders.add(new JarProvider(input));
-        mapping.setFallbackInheritanceProvider(inheritanceProviders);
+            // write it out the same way SpecialSource does, in the order of the input jar
+            JarOutputStream out = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(outJar)));
+            try
+            {
+                // only the exceptor reads it, no point in compressing it
+                out.setLevel(Deflater.NO_COMPRESSION);
 
-        // remap jar
-        remapper.remapJar(input, outJar);
+                for (Map.Entry<String, byte[]> entry : entries.entrySet())
+                {
+                    String name = entry.getKey();
+                    byte[] data = entry.getValue();
+
+                    if (name.endsWith(".class"))
+                    {
+                        data = futures.get(name).get();
+                        name = name.substring(0, name.length() - ".class".length());
+                        String mapped = remapper.map(name);
+                        name = mapped == null ? name : mapped + ".class";
+                    }
+                    else if (name.endsWith(".DSA") || name.endsWith(".SF"))
+                    {
+                        continue;
+                    }
+
+                    JarEntry jarEntry = new JarEntry(name);
+                    jarEntry.setTime(0);
+                    out.putNextEntry(jarEntry);
+                    out.write(data);
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            throw Throwables.propagate(e);
+        }
+        catch (ExecutionException e)
+        {
+            Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+            throw Throwables.propagate(e.getCause());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Does what SpecialSource's pre processor, remapper and AT post processor each do with their own read and write
+     * of the class, in a single pass: reflective field names, then the mapping, then the access changes.
+     * MCInjector's exceptor and LVT visitors aren't part of the chain, the version we shade only exposes whole jar processing.
+     */
+    private static byte[] remapClass(byte[] data, JarRemapper remapper, ClassRepo repo, AccessMap accessMap)
+    {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        ClassVisitor visitor = new AccessClassAdapter(writer, accessMap);
+        visitor = new RemappingClassAdapter(visitor, remapper, repo);
+        visitor = new ReflectionClassAdapter(visitor, remapper.jarMapping);
+
+        new ClassReader(data).accept(visitor, 0);
+
+        if (SpecialSource.identifier != null)
+            writer.newUTF8(SpecialSource.identifier);
+
+        return writer.toByteArray();
+    }
+
+    private static Map<String, byte[]> readJar(File jar) throws IOException
+    {
+        Map<String, byte[]> entries = Maps.newLinkedHashMap();
+
+        ZipFile zip = new ZipFile(jar);
+        try
+        {
+            Enumeration<? extends ZipEntry> it = zip.entries();
+            while (it.hasMoreElements())
+            {
+                ZipEntry entry = it.nextElement();
+                InputStream in = zip.getInputStream(entry);
+                try
+                {
+                    entries.put(entry.getName(), ByteStreams.toByteArray(in));
+                }
+                finally
+                {
+                    in.close();
+                }
+            }
+        }
+        finally
+        {
+            zip.close();
+        }
+
+        return entries;
     }
 
     public void applyExceptor(File inJar, File outJar, File config, File log) throws IOException
@@ -193,6 +334,20 @@ public class DeobfuscateJar extends CachedTask
         }
     }
 
+    /**
+     * The amount of threads the classes are remapped on.
+     * @return the amount of threads
+     */
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    public void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
+
     public File getExceptorCfg()
     {
         return getProject().file(exceptorCfg);
@@ -313,36 +468,18 @@ public class DeobfuscateJar extends CachedTask
 
     private static final class ErroringRemappingAccessMap extends AccessMap
     {
-        private final Map<String, String> renames     = Maps.newHashMap();
+        private final List<MappingTable> renames = Lists.newArrayList();
 
-        public ErroringRemappingAccessMap(File[] renameCsvs) throws IOException
+        public ErroringRemappingAccessMap(File[] renameCsvs, File snapshotDir) throws IOException
         {
             super();
 
+            // later files win, so they are asked first
             for (File f : renameCsvs)
             {
                 if (f == null)
                     continue;
-                Files.readLines(f, StandardCharsets.UTF_8, new LineProcessor<String>()
-                {
-                    @Override
-                    public boolean processLine(String line) throws IOException
-                    {
-                        String[] pts = line.split(",");
-                        if (!"searge".equals(pts[0]))
-                        {
-                            renames.put(pts[0], pts[1]);
-                        }
-
-                        return true;
-                    }
-
-                    @Override
-                    public String getResult()
-                    {
-                        return null;
-                    }
-                });
+                renames.add(0, MappingTable.load(f, snapshotDir));
             }
         }
 
@@ -372,10 +509,14 @@ public class DeobfuscateJar extends CachedTask
                     end = pts[1].substring(idx);
                 }
 
-                String rename = renames.get(start);
-                if (rename != null)
+                for (MappingTable table : renames)
                 {
-                    pts[1] = rename + end;
+                    String rename = table.get(start);
+                    if (rename != null)
+                    {
+                        pts[1] = rename + end;
+                        break;
+                    }
                 }
             }
             String joinedString = Joiner.on('.').join(pts);
@@ -387,4 +528,317 @@ public class DeobfuscateJar extends CachedTask
         {
         }
     }
+
+    /**
+     * The parents and members of every class in the jar, read once before remapping.
+     * SpecialSource would otherwise parse a class again every time it climbs the hierarchy,
+     * and since this never changes after it is built the remapping threads can share it.
+     */
+    private static final class ClassIndex implements ClassRepo
+    {
+        private final Map<String, ClassNode>    classes;
+        private final Map<String, List<String>> parents;
+
+        private ClassIndex(Map<String, ClassNode> classes, Map<String, List<String>> parents)
+        {
+            this.classes = classes;
+            this.parents = parents;
+        }
+
+        public static ClassIndex build(Map<String, byte[]> entries, ExecutorService executor) throws InterruptedException, ExecutionException
+        {
+            List<Future<ClassNode>> futures = Lists.newArrayList();
+            for (Map.Entry<String, byte[]> entry : entries.entrySet())
+            {
+                if (!entry.getKey().endsWith(".class"))
+                    continue;
+
+                final byte[] data = entry.getValue();
+                futures.add(executor.submit(new Callable<ClassNode>() {
+                    @Override
+                    public ClassNode call()
+                    {
+                        // the access of the members is all the remapper looks at
+                        ClassNode node = new ClassNode();
+                        new ClassReader(data).accept(node, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+                        return node;
+                    }
+                }));
+            }
+
+            Map<String, ClassNode> classes = Maps.newHashMap();
+            Map<String, List<String>> parents = Maps.newHashMap();
+            for (Future<ClassNode> future : futures)
+            {
+                ClassNode node = future.get();
+                classes.put(node.name, node);
+
+                // same order as SpecialSource's JarProvider
+                ImmutableList.Builder<String> builder = ImmutableList.builder();
+                builder.addAll(node.interfaces);
+                if (node.superName != null)
+                    builder.add(node.superName);
+                parents.put(node.name, builder.build());
+            }
+
+            return new ClassIndex(ImmutableMap.copyOf(classes), ImmutableMap.copyOf(parents));
+        }
+
+        /**
+         * A new map with the parents of every class in the jar, so the JarMapping never needs a fallback provider.
+         */
+        public InheritanceMap toInheritanceMap()
+        {
+            InheritanceMap map = new InheritanceMap();
+            for (Map.Entry<String, List<String>> entry : parents.entrySet())
+                map.setParents(entry.getKey(), entry.getValue());
+            return map;
+        }
+
+        @Override
+        public ClassNode findClass(String internalName)
+        {
+            return classes.get(internalName);
+        }
+    }
+
+    /**
+     * Remaps the name in Foo.class.getDeclaredField("name"), like SpecialSource's RemapperProcessor.
+     * It only matches the two constants directly in front of the call, so a held back name is written as soon as anything else comes.
+     */
+    private static final class ReflectionClassAdapter extends ClassVisitor
+    {
+        private final JarMapping mapping;
+
+        public ReflectionClassAdapter(ClassVisitor cv, JarMapping mapping)
+        {
+            super(Opcodes.ASM5, cv);
+            this.mapping = mapping;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions)
+        {
+            return new ReflectionMethodAdapter(super.visitMethod(access, name, desc, signature, exceptions), mapping);
+        }
+    }
+
+    private static final class ReflectionMethodAdapter extends MethodVisitor
+    {
+        private final JarMapping mapping;
+        /** the class of the last ldc, if it was one */
+        private Type             owner;
+        /** the string of an ldc right after the class, not written yet */
+        private String           field;
+
+        public ReflectionMethodAdapter(MethodVisitor mv, JarMapping mapping)
+        {
+            super(Opcodes.ASM5, mv);
+            this.mapping = mapping;
+        }
+
+        private void flush()
+        {
+            if (field != null)
+                super.visitLdcInsn(field);
+            owner = null;
+            field = null;
+        }
+
+        @Override
+        public void visitLdcInsn(Object cst)
+        {
+            if (owner != null && field == null && cst instanceof String)
+            {
+                field = (String) cst;
+                return;
+            }
+
+            flush();
+            super.visitLdcInsn(cst);
+            owner = cst instanceof Type ? (Type) cst : null;
+        }
+
+        @Override
+        public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf)
+        {
+            if (field != null && opcode == Opcodes.INVOKEVIRTUAL && "java/lang/Class".equals(owner) && "getDeclaredField".equals(name) && "(Ljava/lang/String;)Ljava/lang/reflect/Field;".equals(desc))
+            {
+                String mapped = mapping.tryClimb(mapping.fields, NodeType.FIELD, this.owner.getInternalName(), field, 0);
+                if (mapped != null)
+                    field = mapped;
+            }
+
+            flush();
+            super.visitMethodInsn(opcode, owner, name, desc, itf);
+        }
+
+        @Override
+        public void visitFrame(int type, int nLocal, Object[] local, int nStack, Object[] stack)
+        {
+            flush();
+            super.visitFrame(type, nLocal, local, nStack, stack);
+        }
+
+        @Override
+        public void visitInsn(int opcode)
+        {
+            flush();
+            super.visitInsn(opcode);
+        }
+
+        @Override
+        public void visitIntInsn(int opcode, int operand)
+        {
+            flush();
+            super.visitIntInsn(opcode, operand);
+        }
+
+        @Override
+        public void visitVarInsn(int opcode, int var)
+        {
+            flush();
+            super.visitVarInsn(opcode, var);
+        }
+
+        @Override
+        public void visitTypeInsn(int opcode, String type)
+        {
+            flush();
+            super.visitTypeInsn(opcode, type);
+        }
+
+        @Override
+        public void visitFieldInsn(int opcode, String owner, String name, String desc)
+        {
+            flush();
+            super.visitFieldInsn(opcode, owner, name, desc);
+        }
+
+        @Override
+        public void visitInvokeDynamicInsn(String name, String desc, Handle bsm, Object... bsmArgs)
+        {
+            flush();
+            super.visitInvokeDynamicInsn(name, desc, bsm, bsmArgs);
+        }
+
+        @Override
+        public void visitJumpInsn(int opcode, Label label)
+        {
+            flush();
+            super.visitJumpInsn(opcode, label);
+        }
+
+        @Override
+        public void visitLabel(Label label)
+        {
+            flush();
+            super.visitLabel(label);
+        }
+
+        @Override
+        public void visitIincInsn(int var, int increment)
+        {
+            flush();
+            super.visitIincInsn(var, increment);
+        }
+
+        @Override
+        public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels)
+        {
+            flush();
+            super.visitTableSwitchInsn(min, max, dflt, labels);
+        }
+
+        @Override
+        public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels)
+        {
+            flush();
+            super.visitLookupSwitchInsn(dflt, keys, labels);
+        }
+
+        @Override
+        public void visitMultiANewArrayInsn(String desc, int dims)
+        {
+            flush();
+            super.visitMultiANewArrayInsn(desc, dims);
+        }
+
+        @Override
+        public AnnotationVisitor visitInsnAnnotation(int typeRef, TypePath typePath, String desc, boolean visible)
+        {
+            flush();
+            return super.visitInsnAnnotation(typeRef, typePath, desc, visible);
+        }
+
+        @Override
+        public void visitLineNumber(int line, Label start)
+        {
+            flush();
+            super.visitLineNumber(line, start);
+        }
+
+        @Override
+        public void visitMaxs(int maxStack, int maxLocals)
+        {
+            flush();
+            super.visitMaxs(maxStack, maxLocals);
+        }
+    }
+
+    /**
+     * Applies the access changes to the remapped class, like SpecialSource's RemapperProcessor.
+     */
+    private static final class AccessClassAdapter extends ClassVisitor
+    {
+        private final AccessMap accessMap;
+        private String          className;
+
+        public AccessClassAdapter(ClassVisitor cv, AccessMap accessMap)
+        {
+            super(Opcodes.ASM5, cv);
+            this.accessMap = accessMap;
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces)
+        {
+            className = name;
+            synchronized (accessMap)
+            {
+                access = accessMap.applyClassAccess(name, access);
+            }
+            super.visit(version, access, name, signature, superName, interfaces);
+        }
+
+        @Override
+        public void visitInnerClass(String name, String outerName, String innerName, int access)
+        {
+            synchronized (accessMap)
+            {
+                access = accessMap.applyClassAccess(name, access);
+            }
+            super.visitInnerClass(name, outerName, innerName, access);
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String desc, String signature, Object value)
+        {
+            synchronized (accessMap)
+            {
+                access = accessMap.applyFieldAccess(className, name, access);
+            }
+            return super.visitField(access, name, desc, signature, value);
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions)
+        {
+            synchronized (accessMap)
+            {
+                access = accessMap.applyMethodAccess(className, name, desc, access);
+            }
+            return super.visitMethod(access, name, desc, signature, exceptions);
+        }
+    }
 }
@@ -22,16 +22,25 @@ package net.minecraftforge.gradle.tasks;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import net.minecraftforge.gradle.common.Constants;
 import net.minecraftforge.gradle.util.caching.Cached;
 import net.minecraftforge.gradle.util.caching.CachedTask;
+import net.minecraftforge.gradle.util.data.MappingTable;
 import net.minecraftforge.gradle.util.data.MethodData;
 import net.minecraftforge.gradle.util.data.SrgContainer;
 import net.minecraftforge.gradle.util.delayed.DelayedFile;
@@ -42,8 +51,12 @@ import org.gradle.api.tasks.InputFiles;
 import org.gradle.api.tasks.OutputFile;
 import org.gradle.api.tasks.TaskAction;
 
-import au.com.bytecode.opencsv.CSVReader;
-
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.io.Files;
 
 public class GenSrgs extends CachedTask
@@ -65,246 +78,268 @@ public class GenSrgs extends CachedTask
     @InputFiles
     private final LinkedList<File> extraSrgs = new LinkedList<File>();
 
+    /** the outputs that are read by the scheduled tasks, or null if all of them are */
+    private Set<File> requiredOutputs;
+
+    public GenSrgs()
+    {
+        super();
+        // gradle remembers a left out output as missing, and would otherwise call the task up to date once a build needs it
+        getOutputs().upToDateWhen(task -> !isRequiredOutputMissing());
+    }
+
     @TaskAction
     public void doTask() throws IOException
     {
         // csv data.  SRG -> MCP
-        HashMap<String, String> methods = new HashMap<String, String>();
-        HashMap<String, String> fields = new HashMap<String, String>();
-        readCSVs(getMethodsCsv(), getFieldsCsv(), methods, fields);
+        File snapshots = Constants.getMappingSnapshotDir(getProject());
+        final MappingTable methods = MappingTable.load(getMethodsCsv(), snapshots);
+        final MappingTable fields = MappingTable.load(getFieldsCsv(), snapshots);
 
-        // Do SRG stuff
-        SrgContainer inSrg = new SrgContainer().readSrg(getInSrg());
-        writeOutSrgs(inSrg, methods, fields);
+        // every output gets its own thread, they only read the resolved lines
+        Map<File, Callable<Void>> outputs = Maps.newLinkedHashMap();
+
+        // Do SRG stuff, the lines are only resolved once something needs them
+        final Supplier<List<SrgLine>> srgLines = Suppliers.memoize(new Supplier<List<SrgLine>>() {
+            @Override
+            public List<SrgLine> get()
+            {
+                SrgContainer inSrg = new SrgContainer().readSrg(getInSrg());
+                return resolveSrg(inSrg, methods, fields);
+            }
+        });
+        for (final SrgFormat format : SrgFormat.values())
+        {
+            final File out = format.getFile(this);
+            if (isOutputRequired(out))
+            {
+                // resolved here, the inputs are not read on the writer threads
+                srgLines.get();
+                outputs.put(out, new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException
+                    {
+                        writeSrg(out, format, srgLines.get());
+                        return null;
+                    }
+                });
+            }
+        }
 
         // do EXC stuff
-        writeOutExcs(methods);
+        final File srgExc = getSrgExc();
+        final File mcpExc = getMcpExc();
+        if (isOutputRequired(srgExc) || isOutputRequired(mcpExc))
+        {
+            final List<String> excLines = Files.readLines(getInExc(), StandardCharsets.UTF_8);
+            final List<String> extraExcLines = Lists.newArrayList();
+            for (File f : getExtraExcs())
+            {
+                extraExcLines.addAll(Files.readLines(f, StandardCharsets.UTF_8));
+            }
+
+            if (isOutputRequired(srgExc))
+            {
+                outputs.put(srgExc, new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException
+                    {
+                        writeSrgExc(srgExc, excLines, extraExcLines);
+                        return null;
+                    }
+                });
+            }
+            if (isOutputRequired(mcpExc))
+            {
+                outputs.put(mcpExc, new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException
+                    {
+                        writeMcpExc(mcpExc, methods, excLines, extraExcLines);
+                        return null;
+                    }
+                });
+            }
+        }
+
+        if (outputs.size() < SrgFormat.values().length + 2)
+        {
+            getLogger().info("Generating {} of the mappings, the rest are made once a task needs them", outputs.size());
+        }
+
+        runOutputs(outputs);
     }
 
-    private static void readCSVs(File methodCsv, File fieldCsv, Map<String, String> methodMap, Map<String, String> fieldMap) throws IOException
+    /**
+     * Only the given outputs are generated, the others are left out until a later build needs them.
+     * The plugins set this to the mappings the scheduled tasks read.
+     * @param requiredOutputs the outputs to generate, or null to generate all of them
+     */
+    public void setRequiredOutputs(Collection<File> requiredOutputs)
     {
-        // read methods
-        CSVReader csvReader = Constants.getReader(methodCsv);
-        for (String[] s : csvReader.readAll())
+        if (requiredOutputs == null)
         {
-            methodMap.put(s[0], s[1]);
+            this.requiredOutputs = null;
+            return;
         }
 
-        // read fields
-        csvReader = Constants.getReader(fieldCsv);
-        for (String[] s : csvReader.readAll())
+        this.requiredOutputs = Sets.newHashSet();
+        for (File f : requiredOutputs)
         {
-            fieldMap.put(s[0], s[1]);
+            this.requiredOutputs.add(f.getAbsoluteFile());
         }
     }
 
-    private void writeOutSrgs(SrgContainer inSrg, Map<String, String> methods, Map<String, String> fields) throws IOException
+    @Override
+    public boolean isOutputRequired(File output)
     {
-        // ensure folders exist
-        Files.createParentDirs(getNotchToSrg());
-        Files.createParentDirs(getNotchToMcp());
-        Files.createParentDirs(getSrgToMcp());
-        Files.createParentDirs(getMcpToSrg());
-        Files.createParentDirs(getMcpToNotch());
+        // without the cache there is no telling whether a left out output is out of date
+        return requiredOutputs == null || !doesCache() || requiredOutputs.contains(output.getAbsoluteFile());
+    }
 
-        // create streams
-        BufferedWriter notchToSrg = Files.newWriter(getNotchToSrg(), StandardCharsets.UTF_8);
-        BufferedWriter notchToMcp = Files.newWriter(getNotchToMcp(), StandardCharsets.UTF_8);
-        BufferedWriter srgToMcp = Files.newWriter(getSrgToMcp(), StandardCharsets.UTF_8);
-        BufferedWriter mcpToSrg = Files.newWriter(getMcpToSrg(), StandardCharsets.UTF_8);
-        BufferedWriter mcpToNotch = Files.newWriter(getMcpToNotch(), StandardCharsets.UTF_8);
+    private boolean isRequiredOutputMissing()
+    {
+        List<File> files = Lists.newArrayList(getSrgExc(), getMcpExc());
+        for (SrgFormat format : SrgFormat.values())
+        {
+            files.add(format.getFile(this));
+        }
 
-        String line, temp, mcpName;
-        // packages
-        for (Entry<String, String> e : inSrg.packageMap.entrySet())
+        for (File file : files)
         {
-            line = "PK: "+e.getKey()+" "+e.getValue();
+            if (isOutputRequired(file) && !file.exists())
+                return true;
+        }
+        return false;
+    }
 
-            // nobody cares about the packages.
-            notchToSrg.write(line);
-            notchToSrg.newLine();
+    private void runOutputs(Map<File, Callable<Void>> outputs) throws IOException
+    {
+        if (outputs.isEmpty())
+            return;
 
-            notchToMcp.write(line);
-            notchToMcp.newLine();
+        ExecutorService executor = Executors.newFixedThreadPool(outputs.size());
+        try
+        {
+            Map<File, Future<Long>> futures = Maps.newLinkedHashMap();
+            for (final Entry<File, Callable<Void>> output : outputs.entrySet())
+            {
+                futures.put(output.getKey(), executor.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws Exception
+                    {
+                        long start = System.nanoTime();
+                        Files.createParentDirs(output.getKey());
+                        output.getValue().call();
+                        return System.nanoTime() - start;
+                    }
+                }));
+            }
 
-            // No package changes from MCP to SRG names
-            //srgToMcp.write(line);
-            //srgToMcp.newLine();
+            for (Entry<File, Future<Long>> future : futures.entrySet())
+            {
+                long time = future.getValue().get();
+                getLogger().info("Wrote {} in {}ms", future.getKey().getName(), TimeUnit.NANOSECONDS.toMillis(time));
+            }
+        }
+        catch (InterruptedException e)
+        {
+            throw Throwables.propagate(e);
+        }
+        catch (ExecutionException e)
+        {
+            Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+            throw Throwables.propagate(e.getCause());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
 
-            // No package changes from MCP to SRG names
-            //mcpToSrg.write(line);
-            //mcpToSrg.newLine();
+    /**
+     * Works out the notch, srg and mcp name of every entry once, for all the outputs.
+     */
+    private static List<SrgLine> resolveSrg(SrgContainer inSrg, MappingTable methods, MappingTable fields)
+    {
+        List<SrgLine> lines = Lists.newArrayListWithCapacity(inSrg.packageMap.size() + inSrg.classMap.size() + inSrg.fieldMap.size() + inSrg.methodMap.size());
 
-            // reverse!
-            mcpToNotch.write("PK: "+e.getValue()+" "+e.getKey());
-            mcpToNotch.newLine();
+        // packages, nobody cares about them. No package changes from MCP to SRG names
+        for (Entry<String, String> e : inSrg.packageMap.entrySet())
+        {
+            lines.add(new SrgLine("PK", e.getKey(), e.getValue(), e.getValue()));
         }
 
-        // classes
+        // classes, SRG and MCP have the same class names
         for (Entry<String, String> e : inSrg.classMap.entrySet())
         {
-            line = "CL: "+e.getKey()+" "+e.getValue();
-
-            // same...
-            notchToSrg.write(line);
-            notchToSrg.newLine();
-
-            // SRG and MCP have the same class names
-            notchToMcp.write(line);
-            notchToMcp.newLine();
-
-            line = "CL: "+e.getValue()+" "+e.getValue();
-
-            // deobf: same classes on both sides.
-            srgToMcp.write("CL: "+e.getValue()+" "+e.getValue());
-            srgToMcp.newLine();
-
-            // reobf: same classes on both sides.
-            mcpToSrg.write("CL: "+e.getValue()+" "+e.getValue());
-            mcpToSrg.newLine();
-
-            // output is notch
-            mcpToNotch.write("CL: "+e.getValue()+" "+e.getKey());
-            mcpToNotch.newLine();
+            lines.add(new SrgLine("CL", e.getKey(), e.getValue(), e.getValue()));
         }
 
         // fields
         for (Entry<String, String> e : inSrg.fieldMap.entrySet())
         {
-            line = "FD: "+e.getKey()+" "+e.getValue();
-
-            // same...
-            notchToSrg.write("FD: "+e.getKey()+" "+e.getValue());
-            notchToSrg.newLine();
-
-            temp = e.getValue().substring(e.getValue().lastIndexOf('/')+1);
-            mcpName = e.getValue();
-            if (fields.containsKey(temp))
-                mcpName = mcpName.replace(temp, fields.get(temp));
+            String srgName = e.getValue();
+            int slash = srgName.lastIndexOf('/');
+            int entry = fields.find(srgName, slash + 1, srgName.length());
 
-            // SRG and MCP have the same class names
-            notchToMcp.write("FD: "+e.getKey()+" "+mcpName);
-            notchToMcp.newLine();
+            String mcpName = srgName;
+            if (entry >= 0)
+                mcpName = srgName.substring(0, slash + 1) + fields.getName(entry);
 
-            // srg name -> mcp name
-            srgToMcp.write("FD: "+e.getValue()+" "+mcpName);
-            srgToMcp.newLine();
-
-            // mcp name -> srg name
-            mcpToSrg.write("FD: "+mcpName+" "+e.getValue());
-            mcpToSrg.newLine();
-
-            // output is notch
-            mcpToNotch.write("FD: "+mcpName+" "+e.getKey());
-            mcpToNotch.newLine();
+            lines.add(new SrgLine("FD", e.getKey(), srgName, mcpName));
         }
 
         // methods
         for (Entry<MethodData, MethodData> e : inSrg.methodMap.entrySet())
         {
-            line = "MD: "+e.getKey()+" "+e.getValue();
-
-            // same...
-            notchToSrg.write("MD: "+e.getKey()+" "+e.getValue());
-            notchToSrg.newLine();
-
-            temp = e.getValue().name.substring(e.getValue().name.lastIndexOf('/')+1);
-            mcpName = e.getValue().toString();
-            if (methods.containsKey(temp))
-                mcpName = mcpName.replace(temp, methods.get(temp));
-
-            // SRG and MCP have the same class names
-            notchToMcp.write("MD: "+e.getKey()+" "+mcpName);
-            notchToMcp.newLine();
+            MethodData srg = e.getValue();
+            String srgName = srg.toString();
 
-            // srg name -> mcp name
-            srgToMcp.write("MD: "+e.getValue()+" "+mcpName);
-            srgToMcp.newLine();
+            String mcpName = srgName;
+            String mapped = methods.get(srg.simpleName);
+            if (mapped != null)
+                mcpName = new MethodData(srg.owner, mapped, srg.sig).toString();
 
-            // mcp name -> srg name
-            mcpToSrg.write("MD: "+mcpName+" "+e.getValue());
-            mcpToSrg.newLine();
-
-            // output is notch
-            mcpToNotch.write("MD: "+mcpName+" "+e.getKey());
-            mcpToNotch.newLine();
+            lines.add(new SrgLine("MD", e.getKey().toString(), srgName, mcpName));
         }
 
-        notchToSrg.flush();
-        notchToSrg.close();
-
-        notchToMcp.flush();
-        notchToMcp.close();
-
-        srgToMcp.flush();
-        srgToMcp.close();
-
-        mcpToSrg.flush();
-        mcpToSrg.close();
-
-        mcpToNotch.flush();
-        mcpToNotch.close();
+        return lines;
     }
 
-    private void writeOutExcs(Map<String, String> methods) throws IOException
+    private static void writeSrg(File file, SrgFormat format, List<SrgLine> lines) throws IOException
     {
-        // ensure folders exist
-        Files.createParentDirs(getSrgExc());
-        Files.createParentDirs(getMcpExc());
-
-        // create streams
-        BufferedWriter srgOut = Files.newWriter(getSrgExc(), StandardCharsets.UTF_8);
-        BufferedWriter mcpOut = Files.newWriter(getMcpExc(), StandardCharsets.UTF_8);
-
-        // read and write existing lines
-        List<String> excLines = Files.readLines(getInExc(), StandardCharsets.UTF_8);
-        String[] split;
-        for (String line : excLines)
+        BufferedWriter out = Files.newWriter(file, StandardCharsets.UTF_8);
+        try
         {
-            // its already in SRG names.
-            srgOut.write(line);
-            srgOut.newLine();
-
-            // remap MCP.
-
-            // split line up
-            split = line.split("=");
-            int sigIndex = split[0].indexOf('(');
-            int dotIndex = split[0].indexOf('.');
-
-            // not a method? wut?
-            if (sigIndex == -1 || dotIndex == -1)
+            for (SrgLine line : lines)
             {
-                mcpOut.write(line);
-                mcpOut.newLine();
-                continue;
+                format.write(line, out);
             }
-
-            // get new name
-            String name = split[0].substring(dotIndex+1, sigIndex);
-            if (methods.containsKey(name))
-                name = methods.get(name);
-
-            // write remapped line
-            mcpOut.write(split[0].substring(0, dotIndex) + "." + name + split[0].substring(sigIndex) + "=" + split[1]);
-            mcpOut.newLine();
-
         }
-
-        for (File f : getExtraExcs())
+        finally
         {
-            List<String> lines = Files.readLines(f, StandardCharsets.UTF_8);
+            out.close();
+        }
+    }
 
-            for (String line : lines)
+    private static void writeSrgExc(File file, List<String> excLines, List<String> extraExcLines) throws IOException
+    {
+        BufferedWriter srgOut = Files.newWriter(file, StandardCharsets.UTF_8);
+        try
+        {
+            // its already in SRG names.
+            for (String line : excLines)
             {
-                // these are in MCP names
-                mcpOut.write(line);
-                mcpOut.newLine();
-
-                // remap SRG
+                srgOut.write(line);
+                srgOut.newLine();
+            }
 
+            // the extra excs are in MCP names, remap SRG
+            for (String line : extraExcLines)
+            {
                 // split line up
-                split = line.split("=");
+                String[] split = line.split("=");
                 int sigIndex = split[0].indexOf('(');
                 int dotIndex = split[0].indexOf('.');
 
@@ -324,12 +359,162 @@ public class GenSrgs extends CachedTask
                 srgOut.newLine();
             }
         }
+        finally
+        {
+            srgOut.close();
+        }
+    }
 
-        srgOut.flush();
-        srgOut.close();
+    private static void writeMcpExc(File file, MappingTable methods, List<String> excLines, List<String> extraExcLines) throws IOException
+    {
+        BufferedWriter mcpOut = Files.newWriter(file, StandardCharsets.UTF_8);
+        try
+        {
+            // the exc is in SRG names, remap MCP.
+            for (String line : excLines)
+            {
+                // split line up
+                String[] split = line.split("=");
+                int sigIndex = split[0].indexOf('(');
+                int dotIndex = split[0].indexOf('.');
+
+                // not a method? wut?
+                if (sigIndex == -1 || dotIndex == -1)
+                {
+                    mcpOut.write(line);
+                    mcpOut.newLine();
+                    continue;
+                }
+
+                // get new name
+                String name = split[0].substring(dotIndex+1, sigIndex);
+                if (methods.contains(name))
+                    name = methods.get(name);
+
+                // write remapped line
+                mcpOut.write(split[0].substring(0, dotIndex) + "." + name + split[0].substring(sigIndex) + "=" + split[1]);
+                mcpOut.newLine();
+            }
+
+            // these are in MCP names
+            for (String line : extraExcLines)
+            {
+                mcpOut.write(line);
+                mcpOut.newLine();
+            }
+        }
+        finally
+        {
+            mcpOut.close();
+        }
+    }
+
+    /**
+     * One entry of the SRG, with its name in every naming.
+     */
+    private static final class SrgLine
+    {
+        final String type, notch, srg, mcp;
 
-        mcpOut.flush();
-        mcpOut.close();
+        SrgLine(String type, String notch, String srg, String mcp)
+        {
+            this.type = type;
+            this.notch = notch;
+            this.srg = srg;
+            this.mcp = mcp;
+        }
+    }
+
+    private enum SrgFormat
+    {
+        NOTCH_TO_SRG
+        {
+            @Override
+            File getFile(GenSrgs task)
+            {
+                return task.getNotchToSrg();
+            }
+
+            @Override
+            void write(SrgLine line, Writer out) throws IOException
+            {
+                write(out, line.type, line.notch, line.srg);
+            }
+        },
+        NOTCH_TO_MCP
+        {
+            @Override
+            File getFile(GenSrgs task)
+            {
+                return task.getNotchToMcp();
+            }
+
+            @Override
+            void write(SrgLine line, Writer out) throws IOException
+            {
+                write(out, line.type, line.notch, line.mcp);
+            }
+        },
+        SRG_TO_MCP
+        {
+            @Override
+            File getFile(GenSrgs task)
+            {
+                return task.getSrgToMcp();
+            }
+
+            @Override
+            void write(SrgLine line, Writer out) throws IOException
+            {
+                // No package changes from MCP to SRG names
+                if (!"PK".equals(line.type))
+                    write(out, line.type, line.srg, line.mcp);
+            }
+        },
+        MCP_TO_SRG
+        {
+            @Override
+            File getFile(GenSrgs task)
+            {
+                return task.getMcpToSrg();
+            }
+
+            @Override
+            void write(SrgLine line, Writer out) throws IOException
+            {
+                // No package changes from MCP to SRG names
+                if (!"PK".equals(line.type))
+                    write(out, line.type, line.mcp, line.srg);
+            }
+        },
+        MCP_TO_NOTCH
+        {
+            @Override
+            File getFile(GenSrgs task)
+            {
+                return task.getMcpToNotch();
+            }
+
+            @Override
+            void write(SrgLine line, Writer out) throws IOException
+            {
+                write(out, line.type, line.mcp, line.notch);
+            }
+        };
+
+        abstract File getFile(GenSrgs task);
+
+        abstract void write(SrgLine line, Writer out) throws IOException;
+
+        static void write(Writer out, String type, String from, String to) throws IOException
+        {
+            out.write(type);
+            out.write(": ");
+            out.write(from);
+            out.write(' ');
+            out.write(to);
+            out.write(Constants.NEWLINE);
+        }
     }
 
     public File getInSrg()
@@ -20,14 +20,19 @@
 package net.minecraftforge.gradle.tasks;
 
 import java.io.File;
+import java.io.PrintStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import net.minecraftforge.gradle.common.Constants;
 import net.minecraftforge.gradle.util.caching.Cached;
@@ -48,6 +53,7 @@ import org.gradle.api.tasks.OutputFile;
 
 import com.github.abrarsyed.jastyle.ASFormatter;
 import com.github.abrarsyed.jastyle.OptParser;
+import com.github.abrarsyed.jastyle.exceptions.MalformedOptionException;
 import com.google.common.base.Joiner;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ArrayListMultimap;
@@ -70,8 +76,16 @@ public class PostDecompileTask extends AbstractEditJarTask
     private Object                       outJar;
 
     private final Multimap<String, File> patchesMap  = ArrayListMultimap.create();
-    private final List<PatchAttempt>      patchErrors = Lists.newArrayList();
-    private final ASFormatter            formatter   = new ASFormatter();
+    private final List<PatchAttempt>      patchErrors = Collections.synchronizedList(Lists.<PatchAttempt>newArrayList());
+    private final List<String>           astyleOptions = Lists.newArrayList();
+    private final ThreadLocal<ASFormatter> formatters = new ThreadLocal<ASFormatter>() {
+        @Override
+        protected ASFormatter initialValue()
+        {
+            return createFormatter();
+        }
+    };
+    private final Map<String, Long>      formatTimes = new ConcurrentHashMap<String, Long>();
     private GLConstantFixer              oglFixer;
 
     @Override
@@ -90,11 +104,38 @@ public class PostDecompileTask extends AbstractEditJarTask
             patchesMap.put(name.substring(0, patchIndex), f);
         }
 
+        // parse the options once, every thread gets its own formatter built from them.
+        for (String line : Files.readLines(getAstyleConfig(), Constants.CHARSET))
+        {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("#"))
+            {
+                astyleOptions.add(line);
+            }
+        }
+
+        oglFixer = new GLConstantFixer();
+    }
+
+    private ASFormatter createFormatter()
+    {
+        ASFormatter formatter = new ASFormatter();
         formatter.setUseProperInnerClassIndenting(false);
+
         OptParser parser = new OptParser(formatter);
-        parser.parseOptionFile(getAstyleConfig());
+        for (String option : astyleOptions)
+        {
+            try
+            {
+                parser.parseOption(option);
+            }
+            catch (MalformedOptionException e)
+            {
+                // ignored, the same as when reading the option file directly
+            }
+        }
 
-        oglFixer = new GLConstantFixer();
+        return formatter;
     }
     class PatchAttempt {
         public PatchAttempt(List<PatchReport> report, String file) {
@@ -130,20 +171,31 @@ public class PostDecompileTask extends AbstractEditJarTask
 
         file = oglFixer.fixOGL(file);
 
+        long start = System.nanoTime();
         Reader reader = new StringReader(file);
         Writer writer = new StringWriter();
-        formatter.format(reader, writer);
+        formatters.get().format(reader, writer);
         reader.close();
         writer.flush();
         writer.close();
         file = writer.toString();
+        formatTimes.put(name, System.nanoTime() - start);
 
         return file;
     }
 
+    @Override
+    protected boolean isAsReadThreadSafe()
+    {
+        // every thread formats with its own formatter, everything else is only read from
+        return true;
+    }
+
     @Override
     public void doStuffAfter() throws Exception
     {
+        logFormatTimes();
+
         Throwable error = null;
         for (PatchAttempt attempt: patchErrors)
         {
@@ -185,6 +237,57 @@ public class PostDecompileTask extends AbstractEditJarTask
         }
     }
 
+    /**
+     * Writes a histogram of the time spent formatting each file, and the slowest files, to the task log.
+     */
+    private void logFormatTimes()
+    {
+        if (formatTimes.isEmpty())
+            return;
+
+        long[] bounds = { 1, 2, 5, 10, 25, 50, 100, 250 };
+        int[] counts = new int[bounds.length + 1];
+        long total = 0;
+
+        for (long nanos : formatTimes.values())
+        {
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            int bucket = 0;
+            while (bucket < bounds.length && millis >= bounds[bucket])
+            {
+                bucket++;
+            }
+            counts[bucket]++;
+            total += nanos;
+        }
+
+        PrintStream log = Constants.getTaskLogStream(getProject(), getName() + ".log");
+        log.println("Formatted " + formatTimes.size() + " files in " + TimeUnit.NANOSECONDS.toMillis(total) + "ms");
+        for (int i = 0; i < counts.length; i++)
+        {
+            String range = i < bounds.length ? "< " + bounds[i] + "ms" : ">= " + bounds[bounds.length - 1] + "ms";
+            log.println(String.format("  %-9s %6d", range, counts[i]));
+        }
+
+        List<Map.Entry<String, Long>> slowest = Lists.newArrayList(formatTimes.entrySet());
+        Collections.sort(slowest, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(Map.Entry<String, Long> o1, Map.Entry<String, Long> o2)
+            {
+                return o2.getValue().compareTo(o1.getValue());
+            }
+        });
+
+        log.println("Slowest files:");
+        for (Map.Entry<String, Long> entry : slowest.subList(0, Math.min(10, slowest.size())))
+        {
+            log.println(String.format("  %6dms %s", TimeUnit.NANOSECONDS.toMillis(entry.getValue()), entry.getKey()));
+        }
+
+        log.close();
+        formatTimes.clear();
+    }
+
     private static ContextualPatch findPatch(Collection<File> files, ContextProvider provider, Logger logger) throws Exception
     {
         ContextualPatch patch = null;
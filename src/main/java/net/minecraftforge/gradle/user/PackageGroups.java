@@ -0,0 +1,199 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.user;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Splits sources into groups of packages that can be compiled on their own, once the groups they depend on are compiled.
+ * Packages that depend on each other, directly or through other packages, always end up in the same group.
+ */
+final class PackageGroups
+{
+    private static final Pattern PACKAGE = Pattern.compile("^\\s*package\\s+([\\w.]+)\\s*;", Pattern.MULTILINE);
+    private static final Pattern DOTTED  = Pattern.compile("[A-Za-z_$][\\w$]*(?:\\.[A-Za-z_$][\\w$]*)+");
+
+    private PackageGroups()
+    {
+        // no instances
+    }
+
+    /**
+     * @param sources source name -&gt; contents
+     * @return the groups, every group after all the groups it depends on
+     */
+    static List<Group> build(Map<String, String> sources)
+    {
+        // which package every source is in, and which packages there are
+        Map<String, String> packages = Maps.newHashMap();
+        for (Map.Entry<String, String> entry : sources.entrySet())
+        {
+            Matcher matcher = PACKAGE.matcher(entry.getValue());
+            packages.put(entry.getKey(), matcher.find() ? matcher.group(1) : "");
+        }
+        Set<String> known = Sets.newHashSet(packages.values());
+
+        // imports and qualified names, anything that looks like one is only an extra edge
+        Map<String, Set<String>> edges = Maps.newTreeMap();
+        for (String pkg : known)
+            edges.put(pkg, Sets.<String> newTreeSet());
+
+        for (Map.Entry<String, String> entry : sources.entrySet())
+        {
+            String pkg = packages.get(entry.getKey());
+            Set<String> out = edges.get(pkg);
+
+            Matcher matcher = DOTTED.matcher(entry.getValue());
+            while (matcher.find())
+            {
+                String name = matcher.group();
+                for (int idx = name.length(); idx != -1; idx = name.lastIndexOf('.', idx - 1))
+                {
+                    String prefix = name.substring(0, idx);
+                    if (known.contains(prefix))
+                    {
+                        if (!prefix.equals(pkg))
+                            out.add(prefix);
+                        break;
+                    }
+                }
+            }
+        }
+
+        List<Set<String>> components = new Tarjan(edges).run();
+
+        Map<String, Group> byPackage = Maps.newHashMap();
+        List<Group> groups = Lists.newArrayListWithCapacity(components.size());
+        for (Set<String> component : components)
+        {
+            Group group = new Group(component);
+            for (String pkg : component)
+            {
+                byPackage.put(pkg, group);
+                for (String dep : edges.get(pkg))
+                {
+                    // dependencies always come first, so they are already there
+                    Group other = byPackage.get(dep);
+                    if (other != null && other != group && group.dependencies.add(other))
+                        group.level = Math.max(group.level, other.level + 1);
+                }
+            }
+            groups.add(group);
+        }
+
+        for (Map.Entry<String, String> entry : packages.entrySet())
+            byPackage.get(entry.getValue()).sources.add(entry.getKey());
+
+        return groups;
+    }
+
+    static final class Group
+    {
+        final Set<String> packages;
+        final Set<String> sources      = Sets.newTreeSet();
+        final Set<Group>  dependencies = Sets.newLinkedHashSet();
+        /** how many groups there are in the longest chain of dependencies below this one */
+        int               level;
+
+        private Group(Set<String> packages)
+        {
+            this.packages = Collections.unmodifiableSet(packages);
+        }
+
+        @Override
+        public String toString()
+        {
+            return packages.toString();
+        }
+    }
+
+    /**
+     * Tarjan's strongly connected components. A component is only finished after everything it reaches,
+     * so the components come out with their dependencies first.
+     */
+    private static final class Tarjan
+    {
+        private final Map<String, Set<String>> edges;
+        private final Map<String, Integer>     index   = Maps.newHashMap();
+        private final Map<String, Integer>     lowLink = Maps.newHashMap();
+        private final List<String>             stack   = Lists.newArrayList();
+        private final Set<String>              onStack = Sets.newHashSet();
+        private final List<Set<String>>        result  = Lists.newArrayList();
+
+        Tarjan(Map<String, Set<String>> edges)
+        {
+            this.edges = edges;
+        }
+
+        List<Set<String>> run()
+        {
+            for (String node : edges.keySet())
+            {
+                if (!index.containsKey(node))
+                    connect(node);
+            }
+            return result;
+        }
+
+        private void connect(String node)
+        {
+            index.put(node, index.size());
+            lowLink.put(node, index.get(node));
+            stack.add(node);
+            onStack.add(node);
+
+            for (String next : edges.get(node))
+            {
+                if (!index.containsKey(next))
+                {
+                    connect(next);
+                    lowLink.put(node, Math.min(lowLink.get(node), lowLink.get(next)));
+                }
+                else if (onStack.contains(next))
+                {
+                    lowLink.put(node, Math.min(lowLink.get(node), index.get(next)));
+                }
+            }
+
+            if (lowLink.get(node).equals(index.get(node)))
+            {
+                Set<String> component = Sets.newTreeSet();
+                String member;
+                do
+                {
+                    member = stack.remove(stack.size() - 1);
+                    onStack.remove(member);
+                    component.add(member);
+                }
+                while (!member.equals(node));
+                result.add(component);
+            }
+        }
+    }
+}
@@ -0,0 +1,491 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.user;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * What the last in-process recompile of {@link TaskRecompileMc} compiled: the hash of every source,
+ * the classes each source produced, and the bytes of those classes.
+ * The output jar itself can't be used for this, the cache check deletes it as soon as the inputs change.
+ */
+final class RecompileState
+{
+    private static final int VERSION = 1;
+
+    private final String                          key;
+    private final Map<String, String>             sourceHashes  = Maps.newHashMap();
+    private final Map<String, List<String>>       sourceClasses = Maps.newHashMap();
+    private final NavigableMap<String, byte[]>    classes       = Maps.newTreeMap();
+    private final Map<String, ClassSummary>       summaries     = Maps.newHashMap();
+
+    /**
+     * @param key everything but the sources that went into the compile, like the options and the classpath
+     */
+    RecompileState(String key)
+    {
+        this.key = key;
+    }
+
+    /**
+     * @return the state stored in the file, or null if there is none or it was compiled with a different key
+     */
+    static RecompileState load(File file, String key)
+    {
+        if (!file.isFile())
+            return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+        {
+            if (in.readInt() != VERSION || !in.readUTF().equals(key))
+                return null;
+
+            RecompileState state = new RecompileState(key);
+            int sources = in.readInt();
+            for (int i = 0; i < sources; i++)
+            {
+                String source = in.readUTF();
+                String hash = in.readUTF();
+                int count = in.readInt();
+
+                Map<String, byte[]> compiled = Maps.newHashMap();
+                for (int j = 0; j < count; j++)
+                {
+                    String name = in.readUTF();
+                    byte[] data = new byte[in.readInt()];
+                    in.readFully(data);
+                    compiled.put(name, data);
+                }
+
+                state.put(source, hash, compiled);
+            }
+
+            return state;
+        }
+        catch (IOException e)
+        {
+            // compile everything again
+            return null;
+        }
+    }
+
+    void save(File file) throws IOException
+    {
+        file.getParentFile().mkdirs();
+        File tmp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        try
+        {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp))))
+            {
+                out.writeInt(VERSION);
+                out.writeUTF(key);
+                out.writeInt(sourceHashes.size());
+                for (Map.Entry<String, String> entry : sourceHashes.entrySet())
+                {
+                    List<String> names = sourceClasses.get(entry.getKey());
+                    out.writeUTF(entry.getKey());
+                    out.writeUTF(entry.getValue());
+                    out.writeInt(names.size());
+                    for (String name : names)
+                    {
+                        byte[] data = classes.get(name);
+                        out.writeUTF(name);
+                        out.writeInt(data.length);
+                        out.write(data);
+                    }
+                }
+            }
+
+            try
+            {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException e)
+            {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally
+        {
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Replaces whatever the source compiled to before.
+     * @param compiled internal name -&gt; class bytes
+     */
+    void put(String source, String hash, Map<String, byte[]> compiled)
+    {
+        remove(source);
+        sourceHashes.put(source, hash);
+        sourceClasses.put(source, ImmutableList.copyOf(Sets.newTreeSet(compiled.keySet())));
+        classes.putAll(compiled);
+    }
+
+    /**
+     * @return the internal names of the classes the source compiled to
+     */
+    List<String> remove(String source)
+    {
+        sourceHashes.remove(source);
+        List<String> names = sourceClasses.remove(source);
+        if (names == null)
+            return Collections.emptyList();
+
+        for (String name : names)
+        {
+            classes.remove(name);
+            summaries.remove(name);
+        }
+        return names;
+    }
+
+    String getHash(String source)
+    {
+        return sourceHashes.get(source);
+    }
+
+    Set<String> getSources()
+    {
+        return sourceHashes.keySet();
+    }
+
+    List<String> getClasses(String source)
+    {
+        List<String> names = sourceClasses.get(source);
+        return names == null ? Collections.<String> emptyList() : names;
+    }
+
+    /**
+     * @return internal name -&gt; class bytes of every class, sorted by name
+     */
+    NavigableMap<String, byte[]> getClasses()
+    {
+        return classes;
+    }
+
+    /**
+     * @return the summary of the class, or null if no source compiled to it
+     */
+    ClassSummary getSummary(String name) throws IOException
+    {
+        ClassSummary summary = summaries.get(name);
+        if (summary == null && classes.containsKey(name))
+        {
+            summary = ClassSummary.read(classes.get(name));
+            summaries.put(name, summary);
+        }
+        return summary;
+    }
+
+    /**
+     * @return internal class name -&gt; the sources whose classes refer to it
+     */
+    Map<String, Set<String>> getDependents() throws IOException
+    {
+        Map<String, Set<String>> dependents = Maps.newHashMap();
+        for (Map.Entry<String, List<String>> entry : sourceClasses.entrySet())
+        {
+            for (String name : entry.getValue())
+            {
+                for (String reference : getSummary(name).references)
+                {
+                    // only the classes compiled here can change
+                    if (!classes.containsKey(reference))
+                        continue;
+
+                    Set<String> set = dependents.get(reference);
+                    if (set == null)
+                    {
+                        set = Sets.newHashSet();
+                        dependents.put(reference, set);
+                    }
+                    set.add(entry.getKey());
+                }
+            }
+        }
+        return dependents;
+    }
+
+    /**
+     * @return internal class name -&gt; the classes compiled here that directly extend or implement it
+     */
+    Map<String, Set<String>> getSubclasses() throws IOException
+    {
+        Map<String, Set<String>> subclasses = Maps.newHashMap();
+        for (String name : classes.keySet())
+        {
+            for (String supertype : getSummary(name).supertypes)
+            {
+                if (!classes.containsKey(supertype))
+                    continue;
+
+                Set<String> set = subclasses.get(supertype);
+                if (set == null)
+                {
+                    set = Sets.newHashSet();
+                    subclasses.put(supertype, set);
+                }
+                set.add(name);
+            }
+        }
+        return subclasses;
+    }
+
+    /**
+     * The parts of a class file other classes depend on, read straight from the constant pool and member tables.
+     */
+    static final class ClassSummary
+    {
+        /** every class named in the constant pool, including the ones only used in descriptors and signatures */
+        final Set<String>         references = Sets.newHashSet();
+        /** the superclass and the interfaces */
+        final List<String>        supertypes = Lists.newArrayList();
+        /** the non-private static final fields other classes may have inlined, name -&gt; value */
+        final Map<String, String> constants  = Maps.newHashMap();
+        /** everything about the class and its non-private members that other classes compile against */
+        final String              abi;
+
+        private ClassSummary(String abi)
+        {
+            this.abi = abi;
+        }
+
+        static ClassSummary read(byte[] data) throws IOException
+        {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            if (in.readInt() != 0xCAFEBABE)
+                throw new IOException("Not a class file");
+            in.readUnsignedShort(); // minor
+            in.readUnsignedShort(); // major
+
+            int count = in.readUnsignedShort();
+            String[] utf8 = new String[count];
+            int[] refs = new int[count];
+            String[] values = new String[count];
+            List<Integer> classRefs = Lists.newArrayList();
+
+            for (int i = 1; i < count; i++)
+            {
+                int tag = in.readUnsignedByte();
+                switch (tag)
+                {
+                    case 1: // Utf8
+                        utf8[i] = in.readUTF();
+                        break;
+                    case 3: // Integer
+                        values[i] = "I" + in.readInt();
+                        break;
+                    case 4: // Float
+                        values[i] = "F" + in.readFloat();
+                        break;
+                    case 5: // Long
+                        values[i] = "J" + in.readLong();
+                        i++;
+                        break;
+                    case 6: // Double
+                        values[i] = "D" + in.readDouble();
+                        i++;
+                        break;
+                    case 7: // Class
+                        refs[i] = in.readUnsignedShort();
+                        classRefs.add(i);
+                        break;
+                    case 8: // String
+                        refs[i] = in.readUnsignedShort();
+                        break;
+                    case 16: // MethodType
+                    case 19: // Module
+                    case 20: // Package
+                        in.readUnsignedShort();
+                        break;
+                    case 15: // MethodHandle
+                        in.readUnsignedByte();
+                        in.readUnsignedShort();
+                        break;
+                    case 9: // Fieldref
+                    case 10: // Methodref
+                    case 11: // InterfaceMethodref
+                    case 12: // NameAndType
+                    case 17: // Dynamic
+                    case 18: // InvokeDynamic
+                        in.readInt();
+                        break;
+                    default:
+                        throw new IOException("Unknown constant pool tag " + tag);
+                }
+            }
+
+            StringBuilder abi = new StringBuilder();
+            int access = in.readUnsignedShort();
+            int thisClass = in.readUnsignedShort();
+            int superClass = in.readUnsignedShort();
+            abi.append(access).append(' ').append(utf8[refs[thisClass]]);
+            abi.append(' ').append(superClass == 0 ? "" : utf8[refs[superClass]]);
+
+            List<String> supertypes = Lists.newArrayList();
+            if (superClass != 0)
+                supertypes.add(utf8[refs[superClass]]);
+
+            int interfaces = in.readUnsignedShort();
+            for (int i = 0; i < interfaces; i++)
+            {
+                String name = utf8[refs[in.readUnsignedShort()]];
+                supertypes.add(name);
+                abi.append(' ').append(name);
+            }
+            abi.append('\n');
+
+            Map<String, String> constants = Maps.newHashMap();
+
+            // fields, then methods
+            for (int kind = 0; kind < 2; kind++)
+            {
+                int members = in.readUnsignedShort();
+                for (int i = 0; i < members; i++)
+                {
+                    int memberAccess = in.readUnsignedShort();
+                    String name = utf8[in.readUnsignedShort()];
+                    String desc = utf8[in.readUnsignedShort()];
+
+                    // private and synthetic members are never compiled against
+                    boolean visible = (memberAccess & 0x1002) == 0;
+                    if (visible)
+                        abi.append(kind == 0 ? "F " : "M ").append(memberAccess).append(' ').append(name).append(' ').append(desc);
+
+                    int attributes = in.readUnsignedShort();
+                    for (int j = 0; j < attributes; j++)
+                    {
+                        String attribute = utf8[in.readUnsignedShort()];
+                        int length = in.readInt();
+
+                        if (kind == 0 && attribute.equals("ConstantValue"))
+                        {
+                            int index = in.readUnsignedShort();
+                            String value = values[index] != null ? values[index] : "S" + utf8[refs[index]];
+                            if ((memberAccess & 0x001A) == 0x0018) // static final, but not private
+                                constants.put(name, value);
+                            if (visible)
+                                abi.append(" = ").append(value);
+                        }
+                        else if (visible && attribute.equals("Signature"))
+                        {
+                            abi.append(' ').append(utf8[in.readUnsignedShort()]);
+                        }
+                        else if (visible && attribute.equals("Exceptions"))
+                        {
+                            int exceptions = in.readUnsignedShort();
+                            for (int k = 0; k < exceptions; k++)
+                                abi.append(" throws ").append(utf8[refs[in.readUnsignedShort()]]);
+                        }
+                        else
+                        {
+                            in.skipBytes(length);
+                        }
+                    }
+
+                    if (visible)
+                        abi.append('\n');
+                }
+            }
+
+            // the generic signature of the class itself
+            int attributes = in.readUnsignedShort();
+            for (int i = 0; i < attributes; i++)
+            {
+                String attribute = utf8[in.readUnsignedShort()];
+                int length = in.readInt();
+
+                if (attribute.equals("Signature"))
+                    abi.append("S ").append(utf8[in.readUnsignedShort()]).append('\n');
+                else
+                    in.skipBytes(length);
+            }
+
+            ClassSummary summary = new ClassSummary(abi.toString());
+            summary.constants.putAll(constants);
+            summary.supertypes.addAll(supertypes);
+
+            for (int index : classRefs)
+            {
+                addReference(summary.references, utf8[refs[index]]);
+            }
+
+            // types that are only used in descriptors and generic signatures
+            for (String str : utf8)
+            {
+                if (str != null && str.indexOf(';') != -1)
+                    addDescriptorReferences(summary.references, str);
+            }
+
+            return summary;
+        }
+
+        private static void addReference(Set<String> references, String name)
+        {
+            if (name.startsWith("["))
+                addDescriptorReferences(references, name);
+            else
+                references.add(name);
+        }
+
+        /**
+         * Adds every L...; type in a descriptor or signature. Anything else that happens to look like one is harmless.
+         */
+        private static void addDescriptorReferences(Set<String> references, String desc)
+        {
+            int start = desc.indexOf('L');
+            while (start != -1)
+            {
+                int end = start + 1;
+                while (end < desc.length() && desc.charAt(end) != ';' && desc.charAt(end) != '<')
+                    end++;
+
+                if (end == desc.length())
+                    break;
+
+                references.add(desc.substring(start + 1, end));
+                start = desc.indexOf('L', end);
+            }
+        }
+    }
+}
@@ -19,16 +19,48 @@
  */
 package net.minecraftforge.gradle.user;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.JarOutputStream;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticListener;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+import net.minecraftforge.gradle.common.Constants;
 import net.minecraftforge.gradle.tasks.CreateStartTask;
 import net.minecraftforge.gradle.util.caching.Cached;
 import net.minecraftforge.gradle.util.caching.CachedTask;
@@ -43,8 +75,12 @@ import org.gradle.api.tasks.OutputFile;
 import org.gradle.api.tasks.TaskAction;
 
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
 
 public class TaskRecompileMc extends CachedTask
@@ -63,13 +99,32 @@ public class TaskRecompileMc extends CachedTask
     @OutputFile
     private Object outJar;
 
+    private boolean inProcess = true;
+    private boolean incremental = true;
+    private int     threads     = 1;
+
     @TaskAction
     public void doStuff() throws IOException
     {
         File inJar = getInSources();
+        File outJar = getOutJar();
+
+        JavaCompiler compiler = isInProcess() ? ToolProvider.getSystemJavaCompiler() : null;
+        if (compiler != null)
+        {
+            Map<String, byte[]> classes = compileInMemory(compiler, inJar);
+
+            outJar.getParentFile().mkdirs();
+            createOutput(outJar, inJar, classes, getInResources());
+            return;
+        }
+        else if (isInProcess())
+        {
+            getLogger().info("No system java compiler found, recompiling with Ant");
+        }
+
         File tempSrc = new File(getTemporaryDir(), "sources");
         File tempCls = new File(getTemporaryDir(), "compiled");
-        File outJar = getOutJar();
 
         // delete and recreate dirs
         getProject().delete(tempSrc, tempCls);
@@ -101,6 +156,392 @@ public class TaskRecompileMc extends CachedTask
         createOutput(outJar, inJar, tempCls, getInResources());
     }
 
+    /**
+     * Compiles the sources straight from the jar, and keeps the classes in memory instead of writing them to a directory.
+     * If the last in-process compile left its state behind, only the sources that changed and the ones depending on them are compiled.
+     * @return internal name -&gt; class bytes, sorted by name
+     */
+    private Map<String, byte[]> compileInMemory(JavaCompiler compiler, File inJar) throws IOException
+    {
+        NavigableMap<String, MemorySource> sources = readSources(inJar);
+
+        // same as the ant task, the sources are already read so no encoding is needed
+        List<String> options = ImmutableList.of(
+                "-classpath", getProject().getConfigurations().getByName(classpath).getAsPath(),
+                "-source", "1.8",
+                "-target", "1.8",
+                "-g",
+                "-proc:none");
+
+        File stateFile = new File(getTemporaryDir(), "recompile.bin");
+        String key = getStateKey(options);
+
+        RecompileState state = null;
+        if (isIncremental())
+        {
+            RecompileState previous = RecompileState.load(stateFile, key);
+            if (previous != null)
+                state = compileIncremental(compiler, previous, sources, options);
+        }
+        else
+        {
+            stateFile.delete();
+        }
+
+        if (state == null)
+        {
+            state = new RecompileState(key);
+            Map<String, Map<String, byte[]>> compiled = getThreads() > 1 ? compileSharded(compiler, sources, options) : null;
+            if (compiled == null)
+                compiled = compile(compiler, sources.values(), Maps.<String, byte[]> newTreeMap(), options, false);
+            for (MemorySource source : sources.values())
+            {
+                Map<String, byte[]> classes = compiled.get(source.getEntryName());
+                state.put(source.getEntryName(), source.hash, classes == null ? Collections.<String, byte[]> emptyMap() : classes);
+            }
+
+            getLogger().info("Compiled {} sources to {} classes in memory", sources.size(), state.getClasses().size());
+        }
+
+        if (isIncremental())
+            state.save(stateFile);
+
+        return state.getClasses();
+    }
+
+    /**
+     * Compiles the changed sources against the classes of the unchanged ones.
+     * When a class changes in a way other classes can see, the sources depending on it are compiled as well, until nothing else changes.
+     * Its subclasses count as changed too, since classes using an inherited member only name the subclass.
+     * @return the updated state, or null if everything has to be compiled again
+     */
+    private RecompileState compileIncremental(JavaCompiler compiler, RecompileState state, Map<String, MemorySource> sources, List<String> options) throws IOException
+    {
+        // built before anything is replaced, the sources that are compiled again don't need them anymore
+        Map<String, Set<String>> dependents = state.getDependents();
+        Map<String, Set<String>> subclasses = state.getSubclasses();
+
+        Set<String> toCompile = Sets.newTreeSet();
+        Set<String> changedClasses = Sets.newHashSet();
+
+        for (MemorySource source : sources.values())
+        {
+            if (!source.hash.equals(state.getHash(source.getEntryName())))
+                toCompile.add(source.getEntryName());
+        }
+
+        for (String source : Lists.newArrayList(state.getSources()))
+        {
+            if (!sources.containsKey(source))
+            {
+                if (hasConstants(state, state.getClasses(source)))
+                    return null;
+                changedClasses.addAll(state.remove(source));
+            }
+        }
+
+        Set<String> compiled = Sets.newHashSet();
+        while (true)
+        {
+            // the summary of a subclass stays the same, but what it inherits does not
+            Deque<String> queue = new ArrayDeque<>(changedClasses);
+            while (!queue.isEmpty())
+            {
+                Set<String> set = subclasses.get(queue.poll());
+                if (set == null)
+                    continue;
+
+                for (String subclass : set)
+                {
+                    if (changedClasses.add(subclass))
+                        queue.add(subclass);
+                }
+            }
+
+            for (String name : changedClasses)
+            {
+                Set<String> set = dependents.get(name);
+                if (set != null)
+                    toCompile.addAll(Sets.difference(Sets.intersection(set, sources.keySet()), compiled));
+            }
+            changedClasses.clear();
+
+            if (toCompile.isEmpty())
+                break;
+
+            // past this point compiling everything at once is faster
+            if (compiled.size() + toCompile.size() > sources.size() / 2)
+            {
+                getLogger().info("{} sources changed, recompiling everything", compiled.size() + toCompile.size());
+                return null;
+            }
+
+            // taken out, so they are compiled against the new sources instead of their old classes
+            Map<String, List<String>> oldClasses = Maps.newHashMap();
+            Map<String, RecompileState.ClassSummary> before = Maps.newHashMap();
+            for (String source : toCompile)
+            {
+                for (String name : state.getClasses(source))
+                    before.put(name, state.getSummary(name));
+                oldClasses.put(source, state.remove(source));
+            }
+
+            List<MemorySource> units = Lists.newArrayList();
+            for (String source : toCompile)
+                units.add(sources.get(source));
+
+            Map<String, Map<String, byte[]>> result = compile(compiler, units, state.getClasses(), options, true);
+            if (result == null)
+            {
+                getLogger().info("Incremental recompile failed, recompiling everything");
+                return null;
+            }
+
+            for (MemorySource source : units)
+            {
+                Map<String, byte[]> classes = result.get(source.getEntryName());
+                state.put(source.getEntryName(), source.hash, classes == null ? Collections.<String, byte[]> emptyMap() : classes);
+
+                for (String name : Sets.union(classes == null ? Collections.<String> emptySet() : classes.keySet(), Sets.newHashSet(oldClasses.get(source.getEntryName()))))
+                {
+                    RecompileState.ClassSummary old = before.get(name);
+                    RecompileState.ClassSummary now = state.getSummary(name);
+
+                    // inlined constants leave no trace in the classes using them, so those can't be found
+                    if (old != null && !old.constants.isEmpty() && (now == null || !now.constants.entrySet().containsAll(old.constants.entrySet())))
+                    {
+                        getLogger().info("Constants of {} changed, recompiling everything", name);
+                        return null;
+                    }
+
+                    if (old == null || now == null || !old.abi.equals(now.abi))
+                        changedClasses.add(name);
+                }
+            }
+
+            compiled.addAll(toCompile);
+            toCompile.clear();
+        }
+
+        getLogger().lifecycle("Recompiled {} of {} sources", compiled.size(), sources.size());
+        return state;
+    }
+
+    /**
+     * Compiles the package groups of the sources on their own, in parallel where they don't depend on each other.
+     * Groups of the same level are merged into one shard per thread, and compiled against the classes of all lower levels.
+     * @return source name -&gt; internal name -&gt; class bytes, or null if the sources have to be compiled at once
+     */
+    private Map<String, Map<String, byte[]>> compileSharded(final JavaCompiler compiler, final Map<String, MemorySource> sources, final List<String> options)
+    {
+        long start = System.nanoTime();
+
+        Map<String, String> contents = Maps.newHashMap();
+        for (MemorySource source : sources.values())
+            contents.put(source.getEntryName(), source.contents);
+
+        List<List<List<MemorySource>>> levels = Lists.newArrayList();
+        for (PackageGroups.Group group : PackageGroups.build(contents))
+        {
+            while (levels.size() <= group.level)
+                levels.add(Lists.<List<MemorySource>> newArrayList());
+
+            List<MemorySource> units = Lists.newArrayList();
+            for (String source : group.sources)
+                units.add(sources.get(source));
+            levels.get(group.level).add(units);
+        }
+
+        if (levels.size() == 1 && levels.get(0).size() == 1)
+        {
+            getLogger().info("The packages all depend on each other, compiling them at once");
+            return null;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(getThreads());
+        try
+        {
+            // the shards of a level read this, it is only added to once all of them are done
+            NavigableMap<String, byte[]> classpath = Maps.newTreeMap();
+            Map<String, Map<String, byte[]>> result = Maps.newHashMap();
+            int shardCount = 0;
+
+            for (List<List<MemorySource>> groups : levels)
+            {
+                List<Future<Map<String, Map<String, byte[]>>>> futures = Lists.newArrayList();
+                for (final List<MemorySource> shard : balance(groups, getThreads()))
+                {
+                    futures.add(executor.submit(() -> compile(compiler, shard, classpath, options, true)));
+                }
+                shardCount += futures.size();
+
+                List<Map<String, Map<String, byte[]>>> level = Lists.newArrayList();
+                for (Future<Map<String, Map<String, byte[]>>> future : futures)
+                {
+                    Map<String, Map<String, byte[]>> compiled = future.get();
+                    if (compiled == null)
+                    {
+                        getLogger().info("Sharded recompile failed, compiling everything at once");
+                        return null;
+                    }
+                    level.add(compiled);
+                }
+
+                for (Map<String, Map<String, byte[]>> compiled : level)
+                {
+                    result.putAll(compiled);
+                    for (Map<String, byte[]> classes : compiled.values())
+                        classpath.putAll(classes);
+                }
+            }
+
+            getLogger().lifecycle("Compiled {} levels of packages in {} shards in {}ms", levels.size(), shardCount, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return result;
+        }
+        catch (InterruptedException e)
+        {
+            throw Throwables.propagate(e);
+        }
+        catch (ExecutionException e)
+        {
+            throw Throwables.propagate(e.getCause());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Merges the groups into at most shardCount shards of roughly equal size.
+     */
+    private static List<List<MemorySource>> balance(List<List<MemorySource>> groups, int shardCount)
+    {
+        Map<List<MemorySource>, Long> sizes = Maps.newIdentityHashMap();
+        for (List<MemorySource> group : groups)
+        {
+            long size = 0;
+            for (MemorySource source : group)
+                size += source.contents.length();
+            sizes.put(group, size);
+        }
+
+        // biggest first, then always into the smallest shard.
+        List<List<MemorySource>> order = Lists.newArrayList(groups);
+        Collections.sort(order, (a, b) -> Long.compare(sizes.get(b), sizes.get(a)));
+
+        int count = Math.max(1, Math.min(shardCount, order.size()));
+        List<List<MemorySource>> shards = Lists.newArrayListWithCapacity(count);
+        long[] shardSizes = new long[count];
+        for (int i = 0; i < count; i++)
+            shards.add(Lists.<MemorySource> newArrayList());
+
+        for (List<MemorySource> group : order)
+        {
+            int smallest = 0;
+            for (int i = 1; i < count; i++)
+            {
+                if (shardSizes[i] < shardSizes[smallest])
+                    smallest = i;
+            }
+            shards.get(smallest).addAll(group);
+            shardSizes[smallest] += sizes.get(group);
+        }
+
+        return shards;
+    }
+
+    private static boolean hasConstants(RecompileState state, List<String> classes) throws IOException
+    {
+        for (String name : classes)
+        {
+            if (!state.getSummary(name).constants.isEmpty())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param classpath internal name -&gt; class bytes of the classes that are not compiled, but can be compiled against
+     * @param partial whether errors only mean everything has to be compiled at once, instead of failing the task
+     * @return source name -&gt; internal name -&gt; class bytes, or null if a partial compile failed
+     */
+    private Map<String, Map<String, byte[]>> compile(JavaCompiler compiler, Collection<MemorySource> sources, NavigableMap<String, byte[]> classpath, List<String> options, boolean partial)
+    {
+        DiagnosticListener<JavaFileObject> listener = diagnostic -> {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR && !partial)
+                getLogger().error(diagnostic.toString());
+            else
+                getLogger().info(diagnostic.toString());
+        };
+
+        MemoryFileManager files = new MemoryFileManager(compiler.getStandardFileManager(listener, null, Constants.CHARSET), classpath);
+        try
+        {
+            if (!compiler.getTask(null, files, listener, options, null, sources).call())
+            {
+                if (!partial)
+                    throw new RuntimeException("Compile failed; see the compiler error output for details.");
+
+                return null;
+            }
+        }
+        finally
+        {
+            try
+            {
+                files.close();
+            }
+            catch (IOException e)
+            {
+                Throwables.propagate(e);
+            }
+        }
+
+        return files.compiled;
+    }
+
+    /**
+     * @return a hash of everything besides the sources that affects the compiled classes
+     */
+    private String getStateKey(List<String> options)
+    {
+        StringBuilder key = new StringBuilder(System.getProperty("java.version"));
+
+        for (String option : options)
+            key.append('\n').append(option);
+
+        // the jars may change without changing their paths
+        for (File file : getProject().getConfigurations().getByName(classpath))
+            key.append('\n').append(file.length()).append(' ').append(file.lastModified());
+
+        return Constants.hash(key.toString());
+    }
+
+    private static NavigableMap<String, MemorySource> readSources(File inJar) throws IOException
+    {
+        NavigableMap<String, MemorySource> sources = Maps.newTreeMap();
+
+        try (ZipFile zip = new ZipFile(inJar))
+        {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements())
+            {
+                ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory() || !entry.getName().endsWith(".java"))
+                    continue;
+
+                try (InputStream in = zip.getInputStream(entry))
+                {
+                    byte[] data = ByteStreams.toByteArray(in);
+                    sources.put(entry.getName(), new MemorySource(entry.getName(), new String(data, Constants.CHARSET), Constants.hash(data, Constants.HASH_FAST)));
+                }
+            }
+        }
+
+        return sources;
+    }
+
     private static String getExtPath()
     {
         String currentExtDirs = System.getProperty("java.ext.dirs");
@@ -149,7 +590,31 @@ public class TaskRecompileMc extends CachedTask
         JarOutputStream zout = new JarOutputStream(new FileOutputStream(outJar));
 
         Visitor visitor = new Visitor(zout, elementsAdded);
+        visitResources(visitor, sourceJar, resourceJar);
+        getProject().fileTree(classDir).visit(visitor); // then the classes
 
+        zout.close();
+    }
+
+    private void createOutput(File outJar, File sourceJar, Map<String, byte[]> classes, File resourceJar) throws IOException
+    {
+        Set<String> elementsAdded = Sets.newHashSet();
+
+        // make output
+        JarOutputStream zout = new JarOutputStream(new FileOutputStream(outJar));
+
+        Visitor visitor = new Visitor(zout, elementsAdded);
+        visitResources(visitor, sourceJar, resourceJar);
+        for (Map.Entry<String, byte[]> entry : classes.entrySet())
+        {
+            visitor.visitClass(entry.getKey() + ".class", entry.getValue()); // then the classes
+        }
+
+        zout.close();
+    }
+
+    private void visitResources(Visitor visitor, File sourceJar, File resourceJar)
+    {
         // custom resources should override existing ones, so resources first.
         if (resourceJar != null)
         {
@@ -157,9 +622,6 @@ public class TaskRecompileMc extends CachedTask
         }
 
         getProject().zipTree(sourceJar).visit(visitor); // then the ones from the the original sources
-        getProject().fileTree(classDir).visit(visitor); // then the classes
-
-        zout.close();
     }
 
     private static final class Visitor implements FileVisitor
@@ -215,6 +677,138 @@ public class TaskRecompileMc extends CachedTask
                 Throwables.propagate(e);
             }
         }
+
+        /**
+         * Adds a class compiled in memory, and the directories above it like the file tree would.
+         */
+        public void visitClass(String name, byte[] data) throws IOException
+        {
+            for (int i = name.indexOf('/'); i != -1; i = name.indexOf('/', i + 1))
+            {
+                String dir = name.substring(0, i + 1);
+                if (entries.add(dir))
+                    zout.putNextEntry(new ZipEntry(dir));
+            }
+
+            if (!entries.add(name))
+                return;
+
+            zout.putNextEntry(new ZipEntry(name));
+            zout.write(data);
+        }
+    }
+
+    private static final class MemorySource extends SimpleJavaFileObject
+    {
+        private final String entryName;
+        private final String contents;
+        private final String hash;
+
+        public MemorySource(String entryName, String contents, String hash)
+        {
+            super(URI.create("memory:///" + entryName), Kind.SOURCE);
+            this.entryName = entryName;
+            this.contents = contents;
+            this.hash = hash;
+        }
+
+        public String getEntryName()
+        {
+            return entryName;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors)
+        {
+            return contents;
+        }
+    }
+
+    private static final class MemoryClass extends SimpleJavaFileObject
+    {
+        private final String binaryName;
+        private final byte[] data;
+
+        public MemoryClass(String internalName, byte[] data)
+        {
+            super(URI.create("memory:///" + internalName + Kind.CLASS.extension), Kind.CLASS);
+            this.binaryName = internalName.replace('/', '.');
+            this.data = data;
+        }
+
+        @Override
+        public InputStream openInputStream()
+        {
+            return new ByteArrayInputStream(data);
+        }
+    }
+
+    /**
+     * Keeps the compiled classes by the source they came from, and adds the classes of the sources that are not compiled again to the classpath.
+     * Everything else, like the rest of the classpath, is left to the standard file manager.
+     */
+    private static final class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager>
+    {
+        private final NavigableMap<String, byte[]>     classpath;
+        private final Map<String, Map<String, byte[]>> compiled = Maps.newHashMap();
+
+        public MemoryFileManager(StandardJavaFileManager fileManager, NavigableMap<String, byte[]> classpath)
+        {
+            super(fileManager);
+            this.classpath = classpath;
+        }
+
+        @Override
+        public Iterable<JavaFileObject> list(Location location, String packageName, Set<Kind> kinds, boolean recurse) throws IOException
+        {
+            Iterable<JavaFileObject> found = super.list(location, packageName, kinds, recurse);
+            if (location != StandardLocation.CLASS_PATH || !kinds.contains(Kind.CLASS) || classpath.isEmpty())
+                return found;
+
+            String prefix = packageName.isEmpty() ? "" : packageName.replace('.', '/') + "/";
+            List<JavaFileObject> list = Lists.newArrayList(found);
+            for (Map.Entry<String, byte[]> entry : classpath.subMap(prefix, prefix + Character.MAX_VALUE).entrySet())
+            {
+                if (recurse || entry.getKey().indexOf('/', prefix.length()) == -1)
+                    list.add(new MemoryClass(entry.getKey(), entry.getValue()));
+            }
+            return list;
+        }
+
+        @Override
+        public String inferBinaryName(Location location, JavaFileObject file)
+        {
+            if (file instanceof MemoryClass)
+                return ((MemoryClass) file).binaryName;
+            else
+                return super.inferBinaryName(location, file);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className, Kind kind, FileObject sibling) throws IOException
+        {
+            if (kind != Kind.CLASS)
+                return super.getJavaFileForOutput(location, className, kind, sibling);
+
+            if (!(sibling instanceof MemorySource))
+                throw new IOException("No source for " + className);
+
+            final Map<String, byte[]> classes = compiled.computeIfAbsent(((MemorySource) sibling).getEntryName(), source -> Maps.newTreeMap());
+            final String name = className.replace('.', '/');
+            return new SimpleJavaFileObject(URI.create("memory:///" + name + kind.extension), kind) {
+                @Override
+                public OutputStream openOutputStream()
+                {
+                    return new ByteArrayOutputStream() {
+                        @Override
+                        public void close()
+                        {
+                            classes.put(name, toByteArray());
+                        }
+                    };
+                }
+            };
+        }
     }
 
     public File getInSources()
@@ -250,6 +844,49 @@ public class TaskRecompileMc extends CachedTask
         this.classpath = classpath;
     }
 
+    /**
+     * Whether the sources are compiled by the compiler of the running JDK, in memory.
+     * Falls back to Ant, which compiles extracted sources on disk, if there is no such compiler.
+     * @return TRUE if the sources are compiled in process
+     */
+    public boolean isInProcess()
+    {
+        return inProcess;
+    }
+
+    public void setInProcess(boolean inProcess)
+    {
+        this.inProcess = inProcess;
+    }
+
+    /**
+     * Whether only the changed sources and the ones depending on them are compiled, when the sources are compiled in process.
+     * @return TRUE if the sources are compiled incrementally
+     */
+    public boolean isIncremental()
+    {
+        return incremental;
+    }
+
+    public void setIncremental(boolean incremental)
+    {
+        this.incremental = incremental;
+    }
+
+    /**
+     * When more than one, a full in-process compile is split into groups of packages that are compiled in parallel.
+     * @return How many groups are compiled at once
+     */
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    public void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
+
     public File getOutJar()
     {
         return getProject().file(outJar);
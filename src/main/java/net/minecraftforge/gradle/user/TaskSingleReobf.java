@@ -99,6 +99,7 @@ public class TaskSingleReobf extends DefaultTask
             exc.excConfig = getExceptorCfg();
             exc.fieldCSV = getFieldCsv();
             exc.methodCSV = getMethodCsv();
+            exc.snapshotDir = Constants.getMappingSnapshotDir(getProject());
             exc.doFirstThings();
             exc.buildSrg(getPrimarySrg(), srg);
         }
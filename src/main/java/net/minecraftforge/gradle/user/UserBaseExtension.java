@@ -36,6 +36,8 @@ public class UserBaseExtension extends BaseExtension
     private ArrayList<String> includes = new ArrayList<>();
     private List<Object> clientJvmArgs = Lists.newArrayList();
     private List<Object> clientRunArgs = Lists.newArrayList();
+    private boolean fusedSourcePipeline = false;
+    private boolean keepIntermediateSources = false;
 
     public UserBaseExtension(UserBasePlugin<? extends UserBaseExtension> plugin)
     {
@@ -136,6 +138,47 @@ public class UserBaseExtension extends BaseExtension
         this.clientRunArgs = clientRunArgs;
     }
 
+    /**
+     * Whether the decompiled sources are post processed and remapped in memory, as part of the decompile task.
+     * Only the final sources jar is written then.
+     *
+     * @return Whether the source pipeline is fused
+     */
+    public boolean isFusedSourcePipeline()
+    {
+        return fusedSourcePipeline;
+    }
+
+    /**
+     * Set whether the decompiled sources are post processed and remapped in memory, as part of the decompile task.
+     *
+     * @param fusedSourcePipeline Whether the source pipeline is fused
+     */
+    public void setFusedSourcePipeline(boolean fusedSourcePipeline)
+    {
+        this.fusedSourcePipeline = fusedSourcePipeline;
+    }
+
+    /**
+     * Whether the intermediate jars are still written when the source pipeline is fused. Useful for debugging.
+     *
+     * @return Whether the intermediate jars are written
+     */
+    public boolean isKeepIntermediateSources()
+    {
+        return keepIntermediateSources;
+    }
+
+    /**
+     * Set whether the intermediate jars are still written when the source pipeline is fused.
+     *
+     * @param keepIntermediateSources Whether the intermediate jars are written
+     */
+    public void setKeepIntermediateSources(boolean keepIntermediateSources)
+    {
+        this.keepIntermediateSources = keepIntermediateSources;
+    }
+
     private List<String> resolve(List<Object> list)
     {
         List<String> out = Lists.newArrayListWithCapacity(list.size());
@@ -23,12 +23,14 @@ import static net.minecraftforge.gradle.common.Constants.*;
 
 import java.io.File;
 import java.util.List;
+import java.util.Set;
 
 import org.gradle.api.DefaultTask;
 import org.gradle.api.NamedDomainObjectContainer;
 import org.gradle.api.Task;
 import org.gradle.api.artifacts.ConfigurationContainer;
 import org.gradle.api.artifacts.maven.Conf2ScopeMappingContainer;
+import org.gradle.api.execution.TaskExecutionGraph;
 import org.gradle.api.file.ConfigurableFileCollection;
 import org.gradle.api.plugins.JavaPluginConvention;
 import org.gradle.api.plugins.MavenPluginConvention;
@@ -40,6 +42,7 @@ import org.gradle.plugins.ide.eclipse.model.EclipseModel;
 import org.gradle.plugins.ide.idea.model.IdeaModel;
 
 import com.google.common.base.Strings;
+import com.google.common.collect.Sets;
 
 import groovy.lang.Closure;
 import net.minecraftforge.gradle.common.BasePlugin;
@@ -47,9 +50,11 @@ import net.minecraftforge.gradle.common.Constants;
 import net.minecraftforge.gradle.tasks.ApplyFernFlowerTask;
 import net.minecraftforge.gradle.tasks.CreateStartTask;
 import net.minecraftforge.gradle.tasks.DeobfuscateJar;
+import net.minecraftforge.gradle.tasks.GenSrgs;
 import net.minecraftforge.gradle.tasks.PostDecompileTask;
 import net.minecraftforge.gradle.tasks.RemapSources;
 import net.minecraftforge.gradle.user.ReobfTaskFactory.ReobfTaskWrapper;
+import net.minecraftforge.gradle.util.GradleConfigurationException;
 import net.minecraftforge.gradle.util.delayed.DelayedFile;
 
 public abstract class UserBasePlugin<T extends UserBaseExtension> extends BasePlugin<T>
@@ -151,6 +156,56 @@ public abstract class UserBasePlugin<T extends UserBaseExtension> extends BasePl
 
     protected abstract void applyUserPlugin();
 
+    /**
+     * Finds the outputs of the genSrgs task that the scheduled tasks read.
+     * @return the outputs, or null if all of them are needed
+     */
+    private static Set<File> getRequiredMappings(TaskExecutionGraph graph, GenSrgs genSrgs)
+    {
+        Set<File> required = Sets.newHashSet();
+
+        for (Task task : graph.getAllTasks())
+        {
+            // GradleStart reads all of them when the game is run
+            if (task instanceof CreateStartTask)
+                return null;
+
+            if (!graph.getDependencies(task).contains(genSrgs))
+                continue;
+
+            if (task instanceof DeobfuscateJar)
+            {
+                DeobfuscateJar deobf = (DeobfuscateJar) task;
+                required.add(deobf.getSrg());
+                if (deobf.getExceptorCfg() != null)
+                    required.add(deobf.getExceptorCfg());
+            }
+            else if (task instanceof TaskSingleReobf)
+            {
+                TaskSingleReobf reobf = (TaskSingleReobf) task;
+                try
+                {
+                    required.add(reobf.getPrimarySrg());
+                }
+                catch (GradleConfigurationException e)
+                {
+                    // fails on its own later
+                    return null;
+                }
+                if (reobf.getExceptorCfg() != null)
+                    required.add(reobf.getExceptorCfg());
+                required.addAll(reobf.getSecondarySrgFiles().getFiles());
+            }
+            else
+            {
+                // no idea what it reads
+                return null;
+            }
+        }
+
+        return required;
+    }
+
     /**
      * Sets up the default settings for reobf tasks.
      *
@@ -201,6 +256,7 @@ public abstract class UserBasePlugin<T extends UserBaseExtension> extends BasePl
         decompile.setInJar(deobfDecompJar);
         decompile.setOutJar(decompJar);
         decompile.setClasspath(project.getConfigurations().getByName(Constants.CONFIG_MC_DEPS));
+        decompile.setDecompCacheDir(delayedFile(DIR_DECOMP_CACHE));
         decompile.dependsOn(deobfDecomp);
 
         final PostDecompileTask postDecomp = makeTask(TASK_POST_DECOMP, PostDecompileTask.class);
@@ -210,6 +266,9 @@ public abstract class UserBasePlugin<T extends UserBaseExtension> extends BasePl
         postDecomp.setAstyleConfig(delayedFile(MCP_DATA_STYLE));
         postDecomp.dependsOn(decompile);
 
+        // only worth keeping the sources in memory if they are post processed in the same build
+        project.getGradle().getTaskGraph().whenReady(graph -> decompile.setInMemoryHandoff(decompile.getFusedStages().isEmpty() && graph.hasTask(postDecomp)));
+
         final RemapSources remap = makeTask(TASK_REMAP, RemapSources.class);
         remap.setInJar(postDecompJar);
         remap.setOutJar(remapped);
@@ -245,6 +304,10 @@ public abstract class UserBasePlugin<T extends UserBaseExtension> extends BasePl
         makeStart.addClasspathConfig(CONFIG_MC_DEPS);
         makeStart.mustRunAfter(deobfBin, recompile);
 
+        // only generate the mappings the scheduled tasks read, the rest are made by the first build that needs them
+        final GenSrgs genSrgs = (GenSrgs) project.getTasks().getByName(TASK_GENERATE_SRGS);
+        project.getGradle().getTaskGraph().whenReady(graph -> genSrgs.setRequiredOutputs(getRequiredMappings(graph, genSrgs)));
+
         // setup reobf...
         ((NamedDomainObjectContainer<IReobfuscator>) project.getExtensions().getByName(EXT_REOBF)).create("jar");
 
@@ -259,6 +322,17 @@ public abstract class UserBasePlugin<T extends UserBaseExtension> extends BasePl
             if (project.getState().getFailure() != null)
                 return;
 
+            // post process and remap right in the decompile task, only writing the sources jar
+            if (getExtension().isFusedSourcePipeline())
+            {
+                decompile.addFusedStage(postDecomp);
+                decompile.addFusedStage(remap);
+                decompile.setOutJar(remapped);
+                decompile.setWriteIntermediates(getExtension().isKeepIntermediateSources());
+                postDecomp.setEnabled(false);
+                remap.setEnabled(false);
+            }
+
             // the recompiled jar exists, or the decomp task is part of the build
             final boolean isDecomp = project.file(recompiledJar).exists() || project.getGradle().getStartParameter().getTaskNames().contains(TASK_SETUP_DECOMP);
 
@@ -0,0 +1,98 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.util;
+
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Passes the contents of a freshly written source jar to the next task of the same build, so it doesn't have to read and inflate the jar again.
+ * The jar itself is still written, since Gradle and the task caches need it.
+ * Contents are only held softly and are handed out at most once, and only if the jar was not touched since it was offered.
+ */
+public final class SourceJarHandoff
+{
+    private static final Map<File, Handoff> HANDOFFS = new ConcurrentHashMap<File, Handoff>();
+
+    private SourceJarHandoff()
+    {
+        // no instances
+    }
+
+    /**
+     * Offers the contents of a jar that was just written.
+     * @param jar the written jar
+     * @param sources name-&gt;contents for all source files in the jar
+     * @param resources name-&gt;contents for everything else, directories included
+     */
+    public static void offer(File jar, Map<String, String> sources, Map<String, byte[]> resources)
+    {
+        jar = jar.getAbsoluteFile();
+        HANDOFFS.put(jar, new Handoff(jar, new Contents(sources, resources)));
+    }
+
+    /**
+     * Takes the contents that were offered for this jar.
+     * @param jar the jar that is about to be read
+     * @return the contents of the jar, or null if they have to be read from disk
+     */
+    public static Contents take(File jar)
+    {
+        jar = jar.getAbsoluteFile();
+        Handoff handoff = HANDOFFS.remove(jar);
+
+        // changed or replaced since?
+        if (handoff == null || handoff.length != jar.length() || handoff.lastModified != jar.lastModified())
+        {
+            return null;
+        }
+
+        return handoff.contents.get();
+    }
+
+    public static class Contents
+    {
+        public final Map<String, String> sources;
+        public final Map<String, byte[]> resources;
+
+        private Contents(Map<String, String> sources, Map<String, byte[]> resources)
+        {
+            this.sources = Collections.unmodifiableMap(sources);
+            this.resources = Collections.unmodifiableMap(resources);
+        }
+    }
+
+    private static class Handoff
+    {
+        private final long                    length;
+        private final long                    lastModified;
+        private final SoftReference<Contents> contents;
+
+        private Handoff(File jar, Contents contents)
+        {
+            this.length = jar.length();
+            this.lastModified = jar.lastModified();
+            this.contents = new SoftReference<Contents>(contents);
+        }
+    }
+}
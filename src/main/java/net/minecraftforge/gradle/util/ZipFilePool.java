@@ -0,0 +1,212 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * Keeps a bounded number of archives open so repeated lookups don't parse the central directory again every time.
+ * Safe to share between threads. Archives in use are never closed, so the pool goes over its size while more than that are in use,
+ * and gets back to it as they are released.
+ */
+public class ZipFilePool implements Closeable
+{
+    private final int                     maxOpen;
+    private final Map<File, Handle>       open  = new LinkedHashMap<File, Handle>(16, 0.75f, true);
+    private final AtomicLong              opens = new AtomicLong();
+    private final AtomicLong              hits  = new AtomicLong();
+
+    public ZipFilePool(int maxOpen)
+    {
+        this.maxOpen = Math.max(1, maxOpen);
+    }
+
+    /**
+     * Opens the archive, or reuses the already open one. Every call must be paired with a call to {@link #release(File)}.
+     * @param file the archive
+     * @return the open archive
+     * @throws IOException if the archive could not be opened
+     */
+    public synchronized ZipFile acquire(File file) throws IOException
+    {
+        file = file.getAbsoluteFile();
+        Handle handle = open.get(file);
+
+        if (handle == null)
+        {
+            handle = new Handle(new ZipFile(file));
+            open.put(file, handle);
+            opens.incrementAndGet();
+        }
+        else
+        {
+            hits.incrementAndGet();
+        }
+
+        // in use before evicting, or the new archive could be closed right away
+        handle.refs++;
+        evict();
+        return handle.zip;
+    }
+
+    /**
+     * Releases an archive that was previously returned by {@link #acquire(File)}.
+     * @param file the archive
+     */
+    public synchronized void release(File file)
+    {
+        file = file.getAbsoluteFile();
+        Handle handle = open.get(file);
+
+        if (handle != null)
+        {
+            handle.refs--;
+            evict();
+        }
+    }
+
+    /**
+     * Reads a single entry of the archive.
+     * @param file the archive
+     * @param entryName the entry to read
+     * @return the contents of the entry, or null if the archive has no such entry
+     * @throws IOException if the archive could not be read
+     */
+    public byte[] read(File file, String entryName) throws IOException
+    {
+        ZipFile zip = acquire(file);
+        try
+        {
+            ZipEntry entry = zip.getEntry(entryName);
+            if (entry == null)
+            {
+                return null;
+            }
+
+            InputStream stream = zip.getInputStream(entry);
+            try
+            {
+                return ByteStreams.toByteArray(stream);
+            }
+            finally
+            {
+                stream.close();
+            }
+        }
+        finally
+        {
+            release(file);
+        }
+    }
+
+    /**
+     * @return how many archives were actually opened
+     */
+    public long getOpenCount()
+    {
+        return opens.get();
+    }
+
+    /**
+     * @return how many lookups were served by an archive that was already open
+     */
+    public long getHitCount()
+    {
+        return hits.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ZipFilePool[opened=" + getOpenCount() + ", hits=" + getHitCount() + "]";
+    }
+
+    /**
+     * Closes every archive, whether it is still in use or not.
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        IOException error = null;
+        for (Handle handle : open.values())
+        {
+            try
+            {
+                handle.zip.close();
+            }
+            catch (IOException e)
+            {
+                error = e;
+            }
+        }
+        open.clear();
+
+        if (error != null)
+        {
+            throw error;
+        }
+    }
+
+    /**
+     * Closes the least recently used archives that aren't in use, until the pool is back at its size.
+     */
+    private void evict()
+    {
+        Iterator<Handle> it = open.values().iterator();
+        while (open.size() > maxOpen && it.hasNext())
+        {
+            Handle handle = it.next();
+            if (handle.refs <= 0)
+            {
+                it.remove();
+                try
+                {
+                    handle.zip.close();
+                }
+                catch (IOException e)
+                {
+                    // only read from, nothing to lose
+                }
+            }
+        }
+    }
+
+    private static class Handle
+    {
+        private final ZipFile zip;
+        private int           refs;
+
+        private Handle(ZipFile zip)
+        {
+            this.zip = zip;
+        }
+    }
+}
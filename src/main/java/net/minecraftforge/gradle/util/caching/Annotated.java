@@ -19,69 +19,107 @@
  */
 package net.minecraftforge.gradle.util.caching;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
+import com.google.common.base.Throwables;
+
+/**
+ * A cached output or input of a task class.
+ * The element and its getter are looked up once, when the CacheContainer for the class is built,
+ * so reading the value on every cache check is a single method handle call.
+ */
 class Annotated
 {
-    private final Class<?> clazz;
-    private final String   symbolName;
-    private final boolean  isMethod;
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private final Class<?>         clazz;
+    private final String           symbolName;
+    private final AnnotatedElement element;
+    private final MethodHandle     getter;
 
     public Annotated(Class<?> clazz, String symbolName, boolean isMethod)
     {
         this.clazz = clazz;
         this.symbolName = symbolName;
-        this.isMethod = isMethod;
+
+        try
+        {
+            if (isMethod)
+            {
+                Method method = clazz.getDeclaredMethod(symbolName);
+                element = method;
+                getter = unreflect(method);
+            }
+            else
+            {
+                Field field = clazz.getDeclaredField(symbolName);
+                element = field;
+                getter = findGetter(clazz, field);
+            }
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw Throwables.propagate(e);
+        }
     }
 
     public Annotated(Class<?> clazz, String fieldName)
     {
-        this.clazz = clazz;
-        this.symbolName = fieldName;
-        isMethod = false;
+        this(clazz, fieldName, false);
     }
 
-    public AnnotatedElement getElement() throws NoSuchMethodException, NoSuchFieldException
+    public AnnotatedElement getElement()
     {
-        if (isMethod)
-            return clazz.getDeclaredMethod(symbolName);
-        else
-            return clazz.getDeclaredField(symbolName);
+        return element;
     }
 
-    public Object getValue(Object instance) throws NoSuchMethodException, NoSuchFieldException, IllegalArgumentException, IllegalAccessException, InvocationTargetException
+    public Object getValue(Object instance)
     {
-        Method method;
-
-        if (isMethod)
-            method = clazz.getDeclaredMethod(symbolName);
-        else
+        try
+        {
+            return getter.invokeExact(instance);
+        }
+        catch (Throwable t)
         {
-            // finds the getter, and uses that if possible.
-            Field f = clazz.getDeclaredField(symbolName);
-            String methodName = f.getType().equals(boolean.class) ? "is" : "get";
+            throw Throwables.propagate(t);
+        }
+    }
 
-            char[] name = symbolName.toCharArray();
-            name[0] = Character.toUpperCase(name[0]);
-            methodName += new String(name);
+    @Override
+    public String toString()
+    {
+        return clazz.getName() + "." + symbolName;
+    }
 
-            try
-            {
-                method = clazz.getMethod(methodName, new Class[0]);
-            }
-            catch (NoSuchMethodException e)
-            {
-                // method not found. Grab the field via reflection
-                f.setAccessible(true);
-                return f.get(instance);
-            }
+    private static MethodHandle findGetter(Class<?> clazz, Field field) throws IllegalAccessException
+    {
+        // finds the getter, and uses that if possible.
+        String methodName = field.getType().equals(boolean.class) ? "is" : "get";
+
+        char[] name = field.getName().toCharArray();
+        name[0] = Character.toUpperCase(name[0]);
+        methodName += new String(name);
+
+        try
+        {
+            return unreflect(clazz.getMethod(methodName));
         }
-        
-        method.setAccessible(true);
+        catch (NoSuchMethodException e)
+        {
+            // method not found. Grab the field directly
+            field.setAccessible(true);
+            return MethodHandles.lookup().unreflectGetter(field).asType(GETTER_TYPE);
+        }
+    }
 
-        return method.invoke(instance, new Object[0]);
+    private static MethodHandle unreflect(Method method) throws IllegalAccessException
+    {
+        method.setAccessible(true);
+        return MethodHandles.lookup().unreflect(method).asType(GETTER_TYPE);
     }
 }
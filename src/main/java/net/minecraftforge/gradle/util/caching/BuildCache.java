@@ -0,0 +1,49 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.util.caching;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A store for cached outputs that can be shared between builds and machines.
+ * Entries are addressed by a key made only from the hashes of the task inputs,
+ * so any build with the same inputs can fetch the output instead of making it again.
+ * @see CacheContainer#setBuildCache(org.gradle.api.Project, BuildCache, boolean)
+ */
+public interface BuildCache
+{
+    /**
+     * Copies the entry to the output, if there is one.
+     * @param key The key of the entry
+     * @param output The file to write to
+     * @return TRUE if the entry was found and written
+     * @throws IOException if the cache could not be read
+     */
+    boolean load(String key, File output) throws IOException;
+
+    /**
+     * Stores the output under the key, replacing any entry that was already there.
+     * @param key The key of the entry
+     * @param output The file to store
+     * @throws IOException if the cache could not be written
+     */
+    void store(String key, File output) throws IOException;
+}
@@ -20,11 +20,17 @@
 package net.minecraftforge.gradle.util.caching;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.minecraftforge.gradle.common.Constants;
 
 import org.gradle.api.Task;
 import org.gradle.api.logging.Logger;
 import org.gradle.api.specs.Spec;
+import org.gradle.api.tasks.OutputDirectory;
 
 import com.google.common.io.Files;
 
@@ -32,6 +38,11 @@ public class CacheCheckSpec implements Spec<Task>
 {
     private final CacheContainer container;
 
+    // one spec per task, so these are the numbers of that task
+    private int  checks;
+    private long checkNanos;
+    private long hashNanos;
+
     public CacheCheckSpec(CacheContainer container)
     {
         this.container = container;
@@ -44,6 +55,49 @@ public class CacheCheckSpec implements Spec<Task>
     }
 
     public boolean isSatisfiedBy(ICachableTask task)
+    {
+        long start = System.nanoTime();
+        long hashStart = hashNanos;
+        try
+        {
+            return check(task);
+        }
+        finally
+        {
+            long time = System.nanoTime() - start;
+            checks++;
+            checkNanos += time;
+            task.getProject().getLogger().info("Cache check of {} took {}ms, {}ms of it hashing", task.getPath(), TimeUnit.NANOSECONDS.toMillis(time), TimeUnit.NANOSECONDS.toMillis(hashNanos - hashStart));
+        }
+    }
+
+    /**
+     * @return How many times the cache of the task was checked
+     */
+    public int getCheckCount()
+    {
+        return checks;
+    }
+
+    /**
+     * @param unit The unit of the result
+     * @return The total time spent checking the cache of the task
+     */
+    public long getCheckTime(TimeUnit unit)
+    {
+        return unit.convert(checkNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param unit The unit of the result
+     * @return The part of the check time that was spent reading and hashing the inputs and outputs
+     */
+    public long getHashTime(TimeUnit unit)
+    {
+        return unit.convert(hashNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private boolean check(ICachableTask task)
     {
         Logger logger = task.getProject().getLogger();
         
@@ -52,17 +106,24 @@ public class CacheCheckSpec implements Spec<Task>
         if (!task.doesCache() || container.cachedList.isEmpty())
             return true;
 
+        // every output is checked, so the ones that are not required are still cleaned up
+        boolean run = false;
         for (Annotated field : container.cachedList)
         {
             try
             {
                 File file = task.getProject().file(field.getValue(task));
+                boolean required = task.isOutputRequired(file);
 
                 // not there? do the task.
                 if (!file.exists())
                 {
-                    logger.info("No output file found.");
-                    return true;
+                    if (required)
+                    {
+                        logger.info("No output file found.");
+                        run |= !loadFromBuildCache(task, field, file);
+                    }
+                    continue;
                 }
 
                 File hashFile = CacheUtil.getHashFile(file);
@@ -70,11 +131,14 @@ public class CacheCheckSpec implements Spec<Task>
                 {
                     logger.info("No cache file found.");
                     file.delete(); // Kill the output file if the hash doesn't exist, else gradle will think it's up-to-date
-                    return true;
+                    run |= required && !loadFromBuildCache(task, field, file);
+                    continue;
                 }
 
                 String foundMD5 = Files.toString(CacheUtil.getHashFile(file), Charset.defaultCharset());
+                long hashStart = System.nanoTime();
                 String calcMD5 = CacheUtil.getHashes(field, container.inputList, task);
+                hashNanos += System.nanoTime() - hashStart;
 
                 if (!calcMD5.equals(foundMD5))
                 {
@@ -83,7 +147,7 @@ public class CacheCheckSpec implements Spec<Task>
                     logger.info("Checksums calculated: " + calcMD5);
                     file.delete();
                     CacheUtil.getHashFile(file).delete();
-                    return true;
+                    run |= required && !loadFromBuildCache(task, field, file);
                 }
 
             }
@@ -95,7 +159,52 @@ public class CacheCheckSpec implements Spec<Task>
             }
         }
 
+        if (run)
+            return true;
+
         // no problems? all of em are here? skip the task.
         return false;
     }
+
+    /**
+     * Fetches the output from the shared build cache, and writes its cache file as if the task had made it.
+     * @return TRUE if the output was found
+     */
+    private boolean loadFromBuildCache(ICachableTask task, Annotated field, File file) throws IOException
+    {
+        BuildCache cache = CacheContainer.getBuildCache(task.getProject());
+
+        // directories are not stored as single entries
+        if (cache == null || field.getElement().isAnnotationPresent(OutputDirectory.class))
+            return false;
+
+        Logger logger = task.getProject().getLogger();
+
+        long hashStart = System.nanoTime();
+        List<String> inputHashes = CacheUtil.getInputHashes(container.inputList, task);
+        String key = CacheUtil.getCacheKey(field, inputHashes);
+        hashNanos += System.nanoTime() - hashStart;
+
+        try
+        {
+            if (!cache.load(key, file))
+            {
+                logger.info("{} is not in the build cache", file.getName());
+                return false;
+            }
+        }
+        catch (IOException e)
+        {
+            // the task can still make it
+            logger.warn("Could not load {} from the build cache {}: {}", file.getName(), cache, e.getMessage());
+            return false;
+        }
+
+        hashStart = System.nanoTime();
+        Files.write(CacheUtil.getHashes(field, inputHashes, task), CacheUtil.getHashFile(file), Constants.CHARSET);
+        hashNanos += System.nanoTime() - hashStart;
+
+        logger.lifecycle("Loaded {} from the build cache", file.getName());
+        return true;
+    }
 }
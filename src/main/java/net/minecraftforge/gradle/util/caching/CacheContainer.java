@@ -23,6 +23,7 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.List;
 
+import org.gradle.api.Project;
 import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.InputDirectory;
 import org.gradle.api.tasks.InputFile;
@@ -49,6 +50,43 @@ public class CacheContainer
                         }
                     });
     
+    private static final String EXT_BUILD_CACHE = "forgeGradleBuildCache";
+
+    /**
+     * Sets the build cache that missing or outdated outputs of the cached tasks of the project are fetched from.
+     * Every project has its own, so projects of the same build or daemon don't replace each other's.
+     * @param project The project whose tasks use the cache
+     * @param cache The cache
+     * @param push Whether outputs made by this build are stored in the cache
+     */
+    public static void setBuildCache(Project project, BuildCache cache, boolean push)
+    {
+        BuildCacheSetting setting = (BuildCacheSetting) project.getExtensions().findByName(EXT_BUILD_CACHE);
+        if (setting == null)
+        {
+            setting = new BuildCacheSetting();
+            project.getExtensions().add(EXT_BUILD_CACHE, setting);
+        }
+        setting.cache = cache;
+        setting.push = push;
+    }
+
+    /**
+     * @param project The project of the cached task
+     * @return The build cache of the project, or null to only use the outputs on disk
+     */
+    public static BuildCache getBuildCache(Project project)
+    {
+        BuildCacheSetting setting = (BuildCacheSetting) project.getExtensions().findByName(EXT_BUILD_CACHE);
+        return setting == null ? null : setting.cache;
+    }
+
+    public static boolean isPushToBuildCache(Project project)
+    {
+        BuildCacheSetting setting = (BuildCacheSetting) project.getExtensions().findByName(EXT_BUILD_CACHE);
+        return setting != null && setting.push;
+    }
+
     protected final List<Annotated> cachedList = Lists.newArrayList();
     protected final List<Annotated> inputList = Lists.newArrayList();
     protected final List<WriteCacheAction> lastActions = Lists.newArrayList();
@@ -100,14 +138,37 @@ public class CacheContainer
         lastActions.add(new WriteCacheAction(annot, inputList));
     }
 
+    /**
+     * Applies the cache of the task class to the task, like {@link #getCache(ICachableTask)}.
+     * @param task The task to cache
+     * @return The check of the task, which keeps its timing counters
+     */
+    public static CacheCheckSpec applyCache(ICachableTask task)
+    {
+        return pool.getUnchecked(task.getClass()).applyCheck(task);
+    }
+
     public CacheContainer applyTo(ICachableTask task)
     {
-        task.onlyIf(new CacheCheckSpec(this));
+        applyCheck(task);
+        return this;
+    }
+
+    private CacheCheckSpec applyCheck(ICachableTask task)
+    {
+        CacheCheckSpec check = new CacheCheckSpec(this);
+        task.onlyIf(check);
         for (WriteCacheAction a : lastActions)
         {
             task.doLast(a);
         }
         
-        return this;
+        return check;
+    }
+
+    private static final class BuildCacheSetting
+    {
+        private BuildCache cache;
+        private boolean    push;
     }
 }
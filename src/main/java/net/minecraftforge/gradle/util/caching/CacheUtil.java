@@ -22,11 +22,20 @@ package net.minecraftforge.gradle.util.caching;
 import groovy.lang.Closure;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.AnnotatedElement;
-import java.lang.reflect.InvocationTargetException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import net.minecraftforge.gradle.common.Constants;
 
@@ -40,12 +49,23 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Joiner;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 class CacheUtil
 {
     public static final Logger LOGGER = LoggerFactory.getLogger(CacheUtil.class);
 
+    /** bump this if the way outputs are keyed or stored in the build cache changes */
+    private static final String BUILD_CACHE_VERSION = "1";
+
+    /** shared by all cached tasks, hashing is mostly waiting on the disk so more threads than that would not help */
+    private static final ExecutorService HASHERS = Executors.newFixedThreadPool(
+            Math.min(8, Runtime.getRuntime().availableProcessors()),
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("FG cache hasher %d").build());
+
     protected static File getHashFile(File file)
     {
         if (file.isDirectory())
@@ -54,12 +74,71 @@ class CacheUtil
             return new File(file.getParentFile(), file.getName() + ".md5");
     }
 
-    @SuppressWarnings("rawtypes")
-    protected static String getHashes(Annotated output, List<Annotated> inputs, ICachableTask task) throws NoSuchMethodException, NoSuchFieldException, IllegalArgumentException, IllegalAccessException, InvocationTargetException
+    protected static String getHashes(Annotated output, List<Annotated> inputs, ICachableTask task)
+    {
+        return getHashes(output, getInputHashes(inputs, task), task);
+    }
+
+    /**
+     * @param inputHashes the result of {@link #getInputHashes(List, ICachableTask)}
+     * @return the contents of the cache file of the output
+     */
+    protected static String getHashes(Annotated output, Collection<String> inputHashes, ICachableTask task)
+    {
+        FingerprintIndex index = getIndex(task);
+        HashList hashes = new HashList(index);
+
+        hashes.addTree(task.getProject().file(output.getValue(task)));
+
+        List<String> result = hashes.get();
+        result.addAll(inputHashes);
+        index.save();
+
+        return Joiner.on(Constants.NEWLINE).join(result);
+    }
+
+    /**
+     * The key of an output in the build cache. Unlike the cache file, this only depends on the inputs.
+     * @param inputHashes the result of {@link #getInputHashes(List, ICachableTask)}
+     */
+    protected static String getCacheKey(Annotated output, Collection<String> inputHashes)
+    {
+        // not the platform newline, the key has to be the same on every machine
+        return Constants.hash((BUILD_CACHE_VERSION + "\n" + output + "\n" + Joiner.on('\n').join(inputHashes)).getBytes(Constants.CHARSET), "SHA-256");
+    }
+
+    /**
+     * @return an empty temporary file next to the target, to be moved over it with {@link #moveIntoPlace(File, File)}
+     */
+    protected static File createTempFile(File target) throws IOException
+    {
+        target.getParentFile().mkdirs();
+
+        // the prefix needs at least 3 characters
+        return File.createTempFile(target.getName() + "-part", ".tmp", target.getParentFile());
+    }
+
+    /**
+     * Moves the finished temporary file over the target, atomically where the file system allows it.
+     */
+    protected static void moveIntoPlace(File tmp, File target) throws IOException
     {
-        List<String> hashes = Lists.newArrayListWithCapacity(inputs.size() + 5);
+        try
+        {
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (AtomicMoveNotSupportedException e)
+        {
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
 
-        hashes.addAll(Constants.hashAll(task.getProject().file(output.getValue(task))));
+    @SuppressWarnings("rawtypes")
+    protected static List<String> getInputHashes(List<Annotated> inputs, ICachableTask task)
+    {
+        // the values are read here, only the files are hashed on the pool
+        FingerprintIndex index = getIndex(task);
+        HashList hashes = new HashList(index);
 
         for (Annotated input : inputs)
         {
@@ -72,26 +151,25 @@ class CacheUtil
             }
             else if (m.isAnnotationPresent(InputFile.class))
             {
-                hashes.add(Constants.hash(task.getProject().file(input.getValue(task))));
+                hashes.addFile(task.getProject().file(val));
             }
             else if (m.isAnnotationPresent(InputDirectory.class))
             {
-                File dir = (File) input.getValue(task);
-                hashes.addAll(Constants.hashAll(dir));
+                File dir = (File) val;
+                hashes.addTree(dir);
             }
             else if (m.isAnnotationPresent(InputFiles.class))
             {
-                FileCollection files = (FileCollection) input.getValue(task);
+                FileCollection files = (FileCollection) val;
                 for (File file : files.getFiles())
                 {
-                    String hash = Constants.hash(file);
-                    hashes.add(hash);
+                    hashes.addFile(file);
                 }
             }
             else
             // just @Input
             {
-                Object obj = input.getValue(task);
+                Object obj = val;
 
                 while (obj instanceof Closure)
                     obj = ((Closure) obj).call();
@@ -109,12 +187,12 @@ class CacheUtil
                         Collections.sort(files);
                         for (File i : files)
                         {
-                            hashes.add(Constants.hash(i));
+                            hashes.addFile(i);
                         }
                     }
                     else
                     {
-                        hashes.add(Constants.hash(file));
+                        hashes.addFile(file);
                     }
                 }
                 else if (obj instanceof PatternSet)
@@ -136,6 +214,96 @@ class CacheUtil
             }
         }
 
-        return Joiner.on(Constants.NEWLINE).join(hashes);
+        List<String> result = hashes.get();
+        index.save();
+
+        return result;
+    }
+
+    /**
+     * @return the hash of the file, or of every file in the directory, in the order {@link Constants#hashAll(File)} uses
+     */
+    static List<String> hashFiles(ICachableTask task, File file)
+    {
+        FingerprintIndex index = getIndex(task);
+
+        List<String> hashes = Lists.newArrayList();
+        for (File f : index.listFiles(file))
+        {
+            hashes.add(index.hash(f));
+        }
+        index.save();
+
+        return hashes;
+    }
+
+    /**
+     * @return the fingerprints of the files hashed by earlier builds
+     */
+    private static FingerprintIndex getIndex(ICachableTask task)
+    {
+        return FingerprintIndex.get(new File(task.getProject().getGradle().getGradleUserHomeDir(), "caches/minecraft/fingerprints.bin"));
+    }
+
+    /**
+     * The hashes of a cache file, in the order they were added, no matter which finishes first.
+     */
+    private static final class HashList
+    {
+        private final FingerprintIndex     index;
+        private final List<Future<String>> hashes = Lists.newArrayList();
+
+        HashList(FingerprintIndex index)
+        {
+            this.index = index;
+        }
+
+        void add(String hash)
+        {
+            hashes.add(Futures.immediateFuture(hash));
+        }
+
+        void addFile(final File file)
+        {
+            hashes.add(HASHERS.submit(new Callable<String>() {
+                @Override
+                public String call()
+                {
+                    return index.hash(file);
+                }
+            }));
+        }
+
+        /**
+         * Adds every file in the directory, or the file itself.
+         */
+        void addTree(File file)
+        {
+            for (File f : index.listFiles(file))
+            {
+                addFile(f);
+            }
+        }
+
+        List<String> get()
+        {
+            List<String> list = Lists.newArrayListWithCapacity(hashes.size());
+            try
+            {
+                for (Future<String> hash : hashes)
+                {
+                    list.add(hash.get());
+                }
+            }
+            catch (InterruptedException e)
+            {
+                throw Throwables.propagate(e);
+            }
+            catch (ExecutionException e)
+            {
+                throw Throwables.propagate(e.getCause());
+            }
+            return list;
+        }
     }
 }
@@ -19,6 +19,9 @@
  */
 package net.minecraftforge.gradle.util.caching;
 
+import java.io.File;
+import java.util.List;
+
 import org.gradle.api.DefaultTask;
 
 /**
@@ -29,11 +32,12 @@ public abstract class CachedTask extends DefaultTask implements ICachableTask
 {
     private boolean doesCache = true;
     private boolean cacheSet = false;
+    private final CacheCheckSpec cacheCheck;
 
     public CachedTask()
     {
         super();
-        CacheContainer.getCache(this);
+        cacheCheck = CacheContainer.applyCache(this);
     }
 
     protected boolean defaultCache()
@@ -50,6 +54,25 @@ public abstract class CachedTask extends DefaultTask implements ICachableTask
             return defaultCache();
     }
 
+    /**
+     * The check that decides whether this task runs, with the time spent in it.
+     * @return The cache check of this task
+     */
+    public CacheCheckSpec getCacheCheck()
+    {
+        return cacheCheck;
+    }
+
+    /**
+     * Hashes files the same way the cache does, without reading the ones that did not change since they were last hashed.
+     * @param file a file or a directory
+     * @return the hash of the file, or of every file in the directory
+     */
+    protected List<String> hashFiles(File file)
+    {
+        return CacheUtil.hashFiles(this, file);
+    }
+
     public void setDoesCache(boolean cacheStuff)
     {
         this.cacheSet = true;
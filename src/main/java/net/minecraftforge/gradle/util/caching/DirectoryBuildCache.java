@@ -0,0 +1,90 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.util.caching;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.google.common.io.Files;
+
+/**
+ * A build cache in a directory, which may be on a network share.
+ * Entries are written to a temporary file first, so builds sharing the directory never see half an entry.
+ */
+public class DirectoryBuildCache implements BuildCache
+{
+    private final File dir;
+
+    public DirectoryBuildCache(File dir)
+    {
+        this.dir = dir;
+    }
+
+    @Override
+    public boolean load(String key, File output) throws IOException
+    {
+        File entry = getEntry(key);
+        if (!entry.isFile())
+            return false;
+
+        File tmp = CacheUtil.createTempFile(output);
+        try
+        {
+            Files.copy(entry, tmp);
+            CacheUtil.moveIntoPlace(tmp, output);
+        }
+        finally
+        {
+            tmp.delete();
+        }
+
+        // lets anyone cleaning up the directory see which entries are still used
+        entry.setLastModified(System.currentTimeMillis());
+        return true;
+    }
+
+    @Override
+    public void store(String key, File output) throws IOException
+    {
+        File entry = getEntry(key);
+        File tmp = CacheUtil.createTempFile(entry);
+        try
+        {
+            Files.copy(output, tmp);
+            CacheUtil.moveIntoPlace(tmp, entry);
+        }
+        finally
+        {
+            tmp.delete();
+        }
+    }
+
+    private File getEntry(String key)
+    {
+        // split up, so no single directory gets too big
+        return new File(new File(dir, key.substring(0, 2)), key);
+    }
+
+    @Override
+    public String toString()
+    {
+        return dir.getAbsolutePath();
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.util.caching;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import net.minecraftforge.gradle.common.Constants;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Remembers the hashes of files by their path, size, modification time and file key (the inode, where there is one),
+ * so a file that did not change since it was last hashed costs a stat instead of reading it again.
+ * The index is kept in the Gradle cache, and shared by every build that uses the same Gradle home.
+ */
+class FingerprintIndex
+{
+    private static final int    VERSION       = 1;
+
+    /** files changed this close to being hashed may still change within the same timestamp, so they are not remembered */
+    private static final long   RACY_NANOS    = TimeUnit.SECONDS.toNanos(2);
+
+    /** entries nobody asked for in this long are dropped */
+    private static final long   EXPIRY_MILLIS = TimeUnit.DAYS.toMillis(30);
+    private static final long   TOUCH_MILLIS  = TimeUnit.DAYS.toMillis(1);
+
+    private static final Map<File, FingerprintIndex> INDEXES = Maps.newHashMap();
+
+    private final File                               file;
+    private final ConcurrentMap<String, Fingerprint> entries = Maps.newConcurrentMap();
+    private volatile boolean                         dirty;
+
+    private FingerprintIndex(File file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * @param file where the index is stored
+     * @return the index stored there, only loaded once per Gradle process
+     */
+    public static FingerprintIndex get(File file)
+    {
+        synchronized (INDEXES)
+        {
+            FingerprintIndex index = INDEXES.get(file);
+            if (index == null)
+            {
+                index = new FingerprintIndex(file);
+                index.load();
+                INDEXES.put(file, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Same as {@link Constants#hash(File)}, but skips reading files that did not change since they were last hashed.
+     */
+    public String hash(File file)
+    {
+        String path = file.getAbsolutePath();
+
+        BasicFileAttributes attrs;
+        try
+        {
+            attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        }
+        catch (IOException e)
+        {
+            // let it fail the usual way
+            return Constants.hash(file);
+        }
+
+        long size = attrs.size();
+        long modified = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        String key = attrs.fileKey() == null ? "" : attrs.fileKey().toString();
+
+        Fingerprint known = entries.get(path);
+        if (known != null && known.size == size && known.modified == modified && known.key.equals(key))
+        {
+            // only written when something else changed, or it would be written every build
+            long now = System.currentTimeMillis();
+            if (now - known.used > TOUCH_MILLIS)
+            {
+                known.used = now;
+                dirty = true;
+            }
+            return known.hash;
+        }
+
+        String hash = Constants.hash(file);
+        if (hash != null && TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()) - modified > RACY_NANOS)
+        {
+            entries.put(path, new Fingerprint(size, modified, key, hash, System.currentTimeMillis()));
+            dirty = true;
+        }
+        else
+        {
+            entries.remove(path);
+        }
+        return hash;
+    }
+
+    /**
+     * @return the files {@link Constants#hashAll(File)} would hash, in the same order
+     */
+    public List<File> listFiles(File file)
+    {
+        List<File> list = Lists.newArrayList();
+        listFiles(file, list);
+        return list;
+    }
+
+    private static void listFiles(File file, List<File> list)
+    {
+        if (file.isDirectory())
+        {
+            for (File f : file.listFiles())
+                listFiles(f, list);
+        }
+        else if (!file.getName().equals(".cache"))
+            list.add(file);
+    }
+
+    private void load()
+    {
+        if (!file.isFile())
+            return;
+
+        long now = System.currentTimeMillis();
+        DataInputStream in = null;
+        try
+        {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != VERSION)
+                return;
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++)
+            {
+                String path = in.readUTF();
+                Fingerprint print = new Fingerprint(in.readLong(), in.readLong(), in.readUTF(), in.readUTF(), in.readLong());
+                if (now - print.used < EXPIRY_MILLIS)
+                    entries.put(path, print);
+            }
+        }
+        catch (IOException e)
+        {
+            // only a cache, start over
+            entries.clear();
+        }
+        finally
+        {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Writes the index, if anything was added since it was last written.
+     */
+    public synchronized void save()
+    {
+        if (!dirty)
+            return;
+        dirty = false;
+
+        DataOutputStream out = null;
+        File tmp = null;
+        try
+        {
+            file.getParentFile().mkdirs();
+            tmp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+
+            // copied first, other threads may still be adding
+            Map<String, Fingerprint> copy = Maps.newHashMap(entries);
+
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(VERSION);
+            out.writeInt(copy.size());
+            for (Map.Entry<String, Fingerprint> e : copy.entrySet())
+            {
+                Fingerprint print = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeLong(print.size);
+                out.writeLong(print.modified);
+                out.writeUTF(print.key);
+                out.writeUTF(print.hash);
+                out.writeLong(print.used);
+            }
+            out.close();
+            out = null;
+
+            // other builds may be reading it
+            try
+            {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e)
+            {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        catch (IOException e)
+        {
+            CacheUtil.LOGGER.debug("Could not write the fingerprint index " + file, e);
+        }
+        finally
+        {
+            closeQuietly(out);
+            if (tmp != null)
+                tmp.delete();
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable)
+    {
+        if (closeable == null)
+            return;
+        try
+        {
+            closeable.close();
+        }
+        catch (IOException e)
+        {
+            // nothing to do
+        }
+    }
+
+    private static final class Fingerprint
+    {
+        final long   size;
+        final long   modified;
+        final String key;
+        final String hash;
+        volatile long used;
+
+        Fingerprint(long size, long modified, String key, String hash, long used)
+        {
+            this.size = size;
+            this.modified = modified;
+            this.key = key;
+            this.hash = hash;
+            this.used = used;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.util.caching;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import net.minecraftforge.gradle.common.Constants;
+
+import com.google.common.base.Throwables;
+import com.google.common.io.Files;
+
+/**
+ * A build cache on an HTTP server that answers GET and PUT requests for {@code <url>/<key>},
+ * like the nginx WebDAV module or the Gradle build cache node.
+ * Credentials can be given in the url, and are then sent with basic authentication.
+ */
+public class HttpBuildCache implements BuildCache
+{
+    private static final int CONNECT_TIMEOUT = (int) TimeUnit.SECONDS.toMillis(10);
+    private static final int READ_TIMEOUT    = (int) TimeUnit.SECONDS.toMillis(60);
+
+    private final URL    url;
+    private final String authorization;
+
+    public HttpBuildCache(String url) throws MalformedURLException
+    {
+        this.url = new URL(url.endsWith("/") ? url : url + "/");
+
+        String userInfo = this.url.getUserInfo();
+        if (userInfo != null)
+        {
+            // the url keeps them percent-encoded, the header needs them as they are
+            int split = userInfo.indexOf(':');
+            String credentials = split == -1 ? decode(userInfo) : decode(userInfo.substring(0, split)) + ":" + decode(userInfo.substring(split + 1));
+            authorization = "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+        }
+        else
+        {
+            authorization = null;
+        }
+    }
+
+    private static String decode(String str) throws MalformedURLException
+    {
+        try
+        {
+            // URLDecoder is for forms, where + is a space
+            return URLDecoder.decode(str.replace("+", "%2B"), "UTF-8");
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            throw Throwables.propagate(e);
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new MalformedURLException("Invalid escape in the credentials of the build cache url");
+        }
+    }
+
+    @Override
+    public boolean load(String key, File output) throws IOException
+    {
+        HttpURLConnection con = open(key);
+        try
+        {
+            int code = con.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_FOUND)
+                return false;
+            else if (code != HttpURLConnection.HTTP_OK)
+                throw new IOException("Could not load " + key + " from the build cache, server returned " + code);
+
+            File tmp = CacheUtil.createTempFile(output);
+            try
+            {
+                InputStream in = con.getInputStream();
+                try
+                {
+                    Files.asByteSink(tmp).writeFrom(in);
+                }
+                finally
+                {
+                    in.close();
+                }
+
+                CacheUtil.moveIntoPlace(tmp, output);
+            }
+            finally
+            {
+                tmp.delete();
+            }
+
+            return true;
+        }
+        finally
+        {
+            con.disconnect();
+        }
+    }
+
+    @Override
+    public void store(String key, File output) throws IOException
+    {
+        HttpURLConnection con = open(key);
+        try
+        {
+            con.setRequestMethod("PUT");
+            con.setRequestProperty("Content-Type", "application/octet-stream");
+            con.setFixedLengthStreamingMode(output.length());
+            con.setDoOutput(true);
+
+            OutputStream out = con.getOutputStream();
+            try
+            {
+                Files.copy(output, out);
+            }
+            finally
+            {
+                out.close();
+            }
+
+            int code = con.getResponseCode();
+            if (code < 200 || code >= 300)
+                throw new IOException("Could not store " + key + " in the build cache, server returned " + code);
+        }
+        finally
+        {
+            con.disconnect();
+        }
+    }
+
+    private HttpURLConnection open(String key) throws IOException
+    {
+        HttpURLConnection con = (HttpURLConnection) new URL(url, key).openConnection();
+        con.setRequestProperty("User-Agent", Constants.USER_AGENT);
+        con.setConnectTimeout(CONNECT_TIMEOUT);
+        con.setReadTimeout(READ_TIMEOUT);
+        con.setUseCaches(false);
+
+        if (authorization != null)
+            con.setRequestProperty("Authorization", authorization);
+
+        return con;
+    }
+
+    @Override
+    public String toString()
+    {
+        // without the credentials
+        return url.getProtocol() + "://" + url.getHost() + (url.getPort() == -1 ? "" : ":" + url.getPort()) + url.getPath();
+    }
+}
@@ -19,6 +19,8 @@
  */
 package net.minecraftforge.gradle.util.caching;
 
+import java.io.File;
+
 import org.gradle.api.Task;
 
 public interface ICachableTask extends Task
@@ -28,4 +30,15 @@ public interface ICachableTask extends Task
      * @return TRUE if the task should actually cache its marked outputs.
      */
     boolean doesCache();
+
+    /**
+     * Whether or not a cached output has to exist for the task to be skipped.
+     * Outputs that are not required are left alone when missing, but still deleted when out of date.
+     * @param output One of the marked outputs
+     * @return TRUE if the task should run when the output is missing. All outputs are required by default.
+     */
+    default boolean isOutputRequired(File output)
+    {
+        return true;
+    }
 }
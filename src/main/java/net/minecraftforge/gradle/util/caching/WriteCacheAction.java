@@ -20,6 +20,7 @@
 package net.minecraftforge.gradle.util.caching;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
 import net.minecraftforge.gradle.common.Constants;
@@ -57,8 +58,23 @@ public class WriteCacheAction implements Action<Task>
             File outFile = task.getProject().file(annot.getValue(task));
             if (outFile.exists())
             {
+                List<String> inputHashes = CacheUtil.getInputHashes(inputs, task);
                 File hashFile = CacheUtil.getHashFile(outFile);
-                Files.write(CacheUtil.getHashes(annot, inputs, task), hashFile, Constants.CHARSET);
+                Files.write(CacheUtil.getHashes(annot, inputHashes, task), hashFile, Constants.CHARSET);
+
+                BuildCache cache = CacheContainer.getBuildCache(task.getProject());
+                if (cache != null && CacheContainer.isPushToBuildCache(task.getProject()) && outFile.isFile())
+                {
+                    try
+                    {
+                        cache.store(CacheUtil.getCacheKey(annot, inputHashes), outFile);
+                    }
+                    catch (IOException e)
+                    {
+                        // the build can go on without it
+                        task.getLogger().warn("Could not store {} in the build cache {}: {}", outFile.getName(), cache, e.getMessage());
+                    }
+                }
             }
         }
         // error? spit it and do the task.
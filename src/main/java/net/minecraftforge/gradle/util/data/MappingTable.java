@@ -0,0 +1,494 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.util.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import net.minecraftforge.gradle.common.Constants;
+
+import au.com.bytecode.opencsv.CSVReader;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * A compact, read-only SRG name -&gt; MCP name table, as read from one of the MCP csv files.
+ * All names and docs are stored in a single char array, and the entries are found through an open addressing table
+ * keyed on the numeric id of the SRG name, so lookups need neither a String nor a boxed key.
+ * Tables are immutable and safe to share between threads, see {@link #load(File)}.
+ * If a snapshot folder is given to {@link #load(File, File)}, a binary snapshot of the table is kept there once a csv file was read,
+ * which later builds map in and copy out in bulk instead of parsing the csv again.
+ */
+public final class MappingTable {
+    /** csv files that were already read, shared by every task of the build. Keyed by path, size and last modification. */
+    private static final Cache<String, MappingTable> LOADED = CacheBuilder.newBuilder().softValues().build();
+
+    /** bump when the snapshot layout changes */
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int SNAPSHOT_MAGIC = 0x46474D54; // FGMT
+
+    /** every new csv file leaves a snapshot behind, the ones nobody read in this long are deleted */
+    private static final long SNAPSHOT_EXPIRY_MILLIS = TimeUnit.DAYS.toMillis(30);
+    private static final long SNAPSHOT_TOUCH_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private final char[] arena;
+    /** per entry: where the SRG name starts in the arena, its length, the length of the MCP name and the length of the doc */
+    private final int[] starts;
+    private final int[] srgLengths;
+    private final int[] nameLengths;
+    private final int[] docLengths;
+    private final int[] hashes;
+    /** entry index + 1, or 0 for empty slots */
+    private final int[] slots;
+    private final int size;
+
+    private MappingTable(char[] arena, int[] starts, int[] srgLengths, int[] nameLengths, int[] docLengths, int[] hashes, int[] slots) {
+        this.arena = arena;
+        this.starts = starts;
+        this.srgLengths = srgLengths;
+        this.nameLengths = nameLengths;
+        this.docLengths = docLengths;
+        this.hashes = hashes;
+        this.slots = slots;
+        this.size = starts.length;
+    }
+
+    /**
+     * Reads an MCP csv file, or returns the table that was already read from it, without keeping a snapshot.
+     * @param csv the csv file
+     * @return the table
+     * @throws IOException if the file could not be read
+     * @see #load(File, File)
+     */
+    public static MappingTable load(File csv) throws IOException {
+        return load(csv, null);
+    }
+
+    /**
+     * Reads an MCP csv file, or returns the table that was already read from it.
+     * The first column is the SRG name, the second the MCP name, and the fourth (if there) the doc.
+     * @param csv the csv file
+     * @param snapshotDir where binary snapshots of the read csv files are kept, so later builds can map them in
+     * instead of parsing the csv again. Null to always parse the csv file.
+     * @return the table
+     * @throws IOException if the file could not be read
+     */
+    public static MappingTable load(final File csv, final File snapshotDir) throws IOException {
+        String key = csv.getAbsolutePath() + "|" + csv.length() + "|" + csv.lastModified();
+        try {
+            return LOADED.get(key, new Callable<MappingTable>() {
+                @Override
+                public MappingTable call() throws Exception {
+                    return readSnapshotOrCsv(csv, snapshotDir);
+                }
+            });
+        } catch (ExecutionException e) {
+            Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private static MappingTable readSnapshotOrCsv(File csv, File dir) throws IOException {
+        if (dir == null) {
+            return readCsv(csv);
+        }
+
+        // keyed like the loaded tables, so finding it does not read the csv. The csv is decoded with the default charset.
+        String key = csv.getAbsolutePath() + "|" + csv.length() + "|" + csv.lastModified() + "|" + Charset.defaultCharset().name();
+        File snapshot = new File(dir, Constants.hash(key) + "-v" + SNAPSHOT_VERSION + ".bin");
+        if (snapshot.isFile()) {
+            try {
+                MappingTable table = readSnapshot(snapshot);
+
+                // the modification time is when it was last read, at most a day off
+                long now = System.currentTimeMillis();
+                if (now - snapshot.lastModified() > SNAPSHOT_TOUCH_MILLIS) {
+                    snapshot.setLastModified(now);
+                }
+                return table;
+            } catch (IOException e) {
+                // broken or from an older build, just make it again
+            }
+        }
+
+        MappingTable table = readCsv(csv);
+        try {
+            table.writeSnapshot(snapshot);
+        } catch (IOException e) {
+            // only a cache
+        }
+        pruneSnapshots(dir);
+        return table;
+    }
+
+    /**
+     * Deletes the snapshots, and temporary files left by failed writes, that were not read in a while.
+     */
+    private static void pruneSnapshots(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        for (File file : files) {
+            if (file.getName().contains(".bin") && now - file.lastModified() > SNAPSHOT_EXPIRY_MILLIS) {
+                file.delete();
+            }
+        }
+    }
+
+    private static MappingTable readSnapshot(File snapshot) throws IOException {
+        FileChannel channel = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buf.remaining() < 24 || buf.getInt() != SNAPSHOT_MAGIC || buf.getInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Not a mapping snapshot: " + snapshot);
+            }
+
+            int size = buf.getInt();
+            int arenaSize = buf.getInt();
+            int slotCount = buf.getInt();
+            buf.getInt(); // padding
+            if (size < 0 || arenaSize < 0 || slotCount <= size || Integer.bitCount(slotCount) != 1
+                    || buf.remaining() != 4L * (size * 5L + slotCount) + 2L * arenaSize) {
+                throw new IOException("Corrupt mapping snapshot: " + snapshot);
+            }
+
+            int[] starts = readInts(buf, size);
+            int[] srgLengths = readInts(buf, size);
+            int[] nameLengths = readInts(buf, size);
+            int[] docLengths = readInts(buf, size);
+            int[] hashes = readInts(buf, size);
+            int[] slots = readInts(buf, slotCount);
+            char[] arena = new char[arenaSize];
+            buf.asCharBuffer().get(arena);
+
+            return new MappingTable(arena, starts, srgLengths, nameLengths, docLengths, hashes, slots);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static int[] readInts(ByteBuffer buf, int count) {
+        int[] ints = new int[count];
+        buf.asIntBuffer().get(ints);
+        buf.position(buf.position() + count * 4);
+        return ints;
+    }
+
+    private void writeSnapshot(File snapshot) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(24 + 4 * (size * 5 + slots.length) + 2 * arena.length);
+        buf.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putInt(size).putInt(arena.length).putInt(slots.length).putInt(0);
+        for (int[] ints : new int[][] { starts, srgLengths, nameLengths, docLengths, hashes, slots }) {
+            buf.asIntBuffer().put(ints);
+            buf.position(buf.position() + ints.length * 4);
+        }
+        buf.asCharBuffer().put(arena);
+        buf.rewind();
+
+        // written aside and moved in, other builds may be reading the same snapshot
+        snapshot.getParentFile().mkdirs();
+        File tmp = File.createTempFile(snapshot.getName(), ".tmp", snapshot.getParentFile());
+        try {
+            FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE);
+            try {
+                while (buf.hasRemaining()) {
+                    channel.write(buf);
+                }
+            } finally {
+                channel.close();
+            }
+
+            try {
+                Files.move(tmp.toPath(), snapshot.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    private static MappingTable readCsv(File csv) throws IOException {
+        Builder builder = new Builder();
+
+        CSVReader reader = Constants.getReader(csv);
+        try {
+            String[] line;
+            while ((line = reader.readNext()) != null) {
+                if (line.length < 2) {
+                    continue;
+                }
+                builder.put(line[0], line[1], line.length > 3 ? line[3] : "");
+            }
+        } finally {
+            reader.close();
+        }
+
+        return builder.build();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Finds the entry for the SRG name at the given range of the text.
+     * @param text contains the SRG name
+     * @param start where the name starts
+     * @param end where the name ends
+     * @return the entry, or -1 if there is none
+     */
+    public int find(CharSequence text, int start, int end) {
+        int hash = hash(text, start, end);
+        int mask = slots.length - 1;
+
+        for (int slot = mix(hash) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int entry = slots[slot] - 1;
+            if (hashes[entry] == hash && equalsSrg(entry, text, start, end)) {
+                return entry;
+            }
+        }
+
+        return -1;
+    }
+
+    public int find(CharSequence srgName) {
+        return find(srgName, 0, srgName.length());
+    }
+
+    /**
+     * @param srgName the SRG name
+     * @return the MCP name, or null if there is none
+     */
+    public String get(CharSequence srgName) {
+        int entry = find(srgName);
+        return entry < 0 ? null : getName(entry);
+    }
+
+    public boolean contains(CharSequence srgName) {
+        return find(srgName) >= 0;
+    }
+
+    public String getName(int entry) {
+        return new String(arena, starts[entry] + srgLengths[entry], nameLengths[entry]);
+    }
+
+    /**
+     * Appends the MCP name of the entry, without creating a String for it.
+     */
+    public void appendName(int entry, StringBuilder out) {
+        out.append(arena, starts[entry] + srgLengths[entry], nameLengths[entry]);
+    }
+
+    /**
+     * @return the doc of the entry, or an empty string if there is none
+     */
+    public String getDoc(int entry) {
+        return new String(arena, starts[entry] + srgLengths[entry] + nameLengths[entry], docLengths[entry]);
+    }
+
+    public boolean hasDoc(int entry) {
+        return docLengths[entry] > 0;
+    }
+
+    private boolean equalsSrg(int entry, CharSequence text, int start, int end) {
+        if (srgLengths[entry] != end - start) {
+            return false;
+        }
+
+        int offset = starts[entry] - start;
+        for (int i = start; i < end; i++) {
+            if (arena[offset + i] != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The numeric id for func_###_x and field_###_x names, they are unique enough on their own.
+     * A plain string hash for everything else.
+     */
+    private static int hash(CharSequence text, int start, int end) {
+        int i = start;
+        if (startsWith(text, start, end, "func_")) {
+            i += 5;
+        } else if (startsWith(text, start, end, "field_")) {
+            i += 6;
+        }
+
+        if (i > start && i < end && isDigit(text.charAt(i))) {
+            int id = 0;
+            while (i < end && isDigit(text.charAt(i))) {
+                id = id * 10 + (text.charAt(i++) - '0');
+            }
+            return id;
+        }
+
+        int hash = 0;
+        for (i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        return hash;
+    }
+
+    private static int mix(int hash) {
+        // murmur3 finalizer, the ids are sequential
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    private static boolean startsWith(CharSequence text, int start, int end, String prefix) {
+        if (end - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (text.charAt(start + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Collects entries for a new table. Putting the same SRG name again replaces the earlier entry, like a map would.
+     */
+    public static final class Builder {
+        private char[] arena = new char[1 << 16];
+        private int arenaSize;
+        private int[] starts = new int[1024];
+        private int[] srgLengths = new int[1024];
+        private int[] nameLengths = new int[1024];
+        private int[] docLengths = new int[1024];
+        private int[] hashes = new int[1024];
+        private int[] slots = new int[2048];
+        private int size;
+
+        public Builder put(String srgName, String mcpName) {
+            return put(srgName, mcpName, "");
+        }
+
+        public Builder put(String srgName, String mcpName, String doc) {
+            int hash = hash(srgName, 0, srgName.length());
+
+            int entry = findEntry(srgName, hash);
+            if (entry < 0) {
+                entry = size++;
+                if (entry == starts.length) {
+                    int length = entry * 2;
+                    starts = Arrays.copyOf(starts, length);
+                    srgLengths = Arrays.copyOf(srgLengths, length);
+                    nameLengths = Arrays.copyOf(nameLengths, length);
+                    docLengths = Arrays.copyOf(docLengths, length);
+                    hashes = Arrays.copyOf(hashes, length);
+                }
+                hashes[entry] = hash;
+
+                // keep the table at most half full
+                if (size * 2 > slots.length) {
+                    rehash(slots.length * 2);
+                } else {
+                    insertSlot(entry);
+                }
+            }
+
+            // replaced entries just leave their old chars behind in the arena
+            starts[entry] = arenaSize;
+            srgLengths[entry] = srgName.length();
+            nameLengths[entry] = mcpName.length();
+            docLengths[entry] = doc.length();
+            append(srgName);
+            append(mcpName);
+            append(doc);
+
+            return this;
+        }
+
+        public MappingTable build() {
+            return new MappingTable(
+                    Arrays.copyOf(arena, arenaSize),
+                    Arrays.copyOf(starts, size),
+                    Arrays.copyOf(srgLengths, size),
+                    Arrays.copyOf(nameLengths, size),
+                    Arrays.copyOf(docLengths, size),
+                    Arrays.copyOf(hashes, size),
+                    slots.clone());
+        }
+
+        private int findEntry(String srgName, int hash) {
+            int mask = slots.length - 1;
+            for (int slot = mix(hash) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+                int entry = slots[slot] - 1;
+                if (hashes[entry] == hash && srgLengths[entry] == srgName.length()
+                        && new String(arena, starts[entry], srgLengths[entry]).equals(srgName)) {
+                    return entry;
+                }
+            }
+            return -1;
+        }
+
+        private void insertSlot(int entry) {
+            int mask = slots.length - 1;
+            int slot = mix(hashes[entry]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = entry + 1;
+        }
+
+        private void rehash(int length) {
+            slots = new int[length];
+            for (int entry = 0; entry < size; entry++) {
+                insertSlot(entry);
+            }
+        }
+
+        private void append(String str) {
+            if (arenaSize + str.length() > arena.length) {
+                arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + str.length()));
+            }
+            str.getChars(0, str.length(), arena, arenaSize);
+            arenaSize += str.length();
+        }
+    }
+}
@@ -1,18 +1,42 @@
 package net.minecraftforge.gradle.util.data;
 
+/**
+ * A method and its signature. The owner and the name are kept apart, so the owners can be shared by all methods of a class.
+ */
 public class MethodData {
-    public final String name, sig;
+    /** the internal name of the class, or null if there is none */
+    public final String owner;
+    public final String simpleName, sig;
 
     public MethodData(String name, String sig) {
-        this.name = name;
+        int slash = name.lastIndexOf('/');
+        this.owner = slash < 0 ? null : name.substring(0, slash);
+        this.simpleName = name.substring(slash + 1);
         this.sig = sig;
     }
 
+    public MethodData(String owner, String simpleName, String sig) {
+        this.owner = owner;
+        this.simpleName = simpleName;
+        this.sig = sig;
+    }
+
+    /**
+     * Takes the place of the old <code>name</code> field, which build scripts still read as <code>methodData.name</code>.
+     * The string is made on every call, use {@link #owner} and {@link #simpleName} instead.
+     * @return the name with the owner, like <code>net/minecraft/Foo/func_1_a</code>
+     */
+    @Deprecated
+    public String getName() {
+        return owner == null ? simpleName : owner + "/" + simpleName;
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
         int result = 1;
-        result = prime * result + ((name == null) ? 0 : name.hashCode());
+        result = prime * result + ((owner == null) ? 0 : owner.hashCode());
+        result = prime * result + simpleName.hashCode();
         result = prime * result + ((sig == null) ? 0 : sig.hashCode());
         return result;
     }
@@ -29,11 +53,11 @@ public class MethodData {
             return false;
         }
         MethodData other = (MethodData) obj;
-        if (name == null) {
-            if (other.name != null) {
-                return false;
-            }
-        } else if (!name.equals(other.name)) {
+        // owners are usually the same instance
+        if (owner != other.owner && (owner == null || !owner.equals(other.owner))) {
+            return false;
+        }
+        if (!simpleName.equals(other.simpleName)) {
             return false;
         }
         if (sig == null) {
@@ -48,6 +72,6 @@ public class MethodData {
 
     @Override
     public String toString() {
-        return name + " " + sig;
+        return getName() + " " + sig;
     }
 }
@@ -2,19 +2,18 @@ package net.minecraftforge.gradle.util.data;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
-
-import joptsimple.internal.Strings;
 
 import com.google.common.base.Throwables;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
-import com.google.common.io.Files;
 
 public class SrgContainer {
     public final BiMap<String, String> classMap, fieldMap, packageMap;
     public final BiMap<MethodData, MethodData> methodMap;
 
+    /** shared by every file read into this container */
+    private final SymbolTable symbols = new SymbolTable();
+
     public SrgContainer() {
         classMap = HashBiMap.create();
         packageMap = HashBiMap.create();
@@ -24,27 +23,27 @@ public class SrgContainer {
 
     public SrgContainer readSrg(File srg) {
         try {
-            for (String line : Files.readLines(srg, Charset.defaultCharset())) {
-                if (Strings.isNullOrEmpty(line) || line.startsWith("#")) {
-                    continue;
+            SrgReader.read(srg, symbols, new SrgReader.Visitor() {
+                @Override
+                public void visitPackage(String obf, String deobf) {
+                    packageMap.put(obf, deobf);
+                }
+
+                @Override
+                public void visitClass(String obf, String deobf) {
+                    classMap.put(obf, deobf);
+                }
+
+                @Override
+                public void visitField(String obf, String deobf) {
+                    fieldMap.put(obf, deobf);
                 }
 
-                String type = line.substring(0, 2);
-                line = line.substring(4);
-                String[] args = line.split(" ");
-
-                if (type.equals("PK")) {
-                    packageMap.put(args[0], args[1]);
-                } else if (type.equals("CL")) {
-                    classMap.put(args[0], args[1]);
-                } else if (type.equals("FD")) {
-                    fieldMap.put(args[0], args[1]);
-                } else if (type.equals("MD")) {
-                    methodMap.put(new MethodData(args[0], args[1]), new MethodData(args[2], args[3]));
-                } else {
-                    throw new RuntimeException("Invalid SRG file: " + srg);
+                @Override
+                public void visitMethod(MethodData obf, MethodData deobf) {
+                    methodMap.put(obf, deobf);
                 }
-            }
+            });
         } catch (IOException e) {
             Throwables.propagate(e);
         }
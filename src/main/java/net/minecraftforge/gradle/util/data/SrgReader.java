@@ -0,0 +1,231 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.util.data;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Reads SRG files without keeping their lines around. The file is scanned through a char buffer,
+ * and every entry is handed to a {@link Visitor} as soon as it is read.
+ * Class names, method owners and method signatures repeat a lot, so they go through a {@link SymbolTable}.
+ */
+public final class SrgReader {
+    private static final int MAX_ARGS = 4;
+
+    private final Visitor visitor;
+    private final String source;
+    private final SymbolTable symbols;
+
+    private char[] buf = new char[1 << 14];
+    private final int[] argStarts = new int[MAX_ARGS];
+    private final int[] argEnds = new int[MAX_ARGS];
+
+    /**
+     * Gets every entry of an SRG file as it is read.
+     * Fields are given with their owner, like <code>net/minecraft/Foo/field_1_a</code>.
+     */
+    public interface Visitor {
+        void visitPackage(String obf, String deobf);
+
+        void visitClass(String obf, String deobf);
+
+        void visitField(String obf, String deobf);
+
+        void visitMethod(MethodData obf, MethodData deobf);
+    }
+
+    private SrgReader(Visitor visitor, String source, SymbolTable symbols) {
+        this.visitor = visitor;
+        this.source = source;
+        this.symbols = symbols;
+    }
+
+    /**
+     * Reads an SRG file with the default charset.
+     * @param srg the file
+     * @param visitor gets the entries
+     * @throws IOException if the file could not be read
+     */
+    public static void read(File srg, Visitor visitor) throws IOException {
+        read(srg, new SymbolTable(), visitor);
+    }
+
+    /**
+     * Reads an SRG file with the default charset.
+     * @param srg the file
+     * @param symbols interns the class names and signatures, can be shared between files
+     * @param visitor gets the entries
+     * @throws IOException if the file could not be read
+     */
+    public static void read(File srg, SymbolTable symbols, Visitor visitor) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(srg), Charset.defaultCharset());
+        try {
+            read(reader, srg.toString(), symbols, visitor);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads SRG lines. The reader is not closed.
+     * @param reader the SRG lines
+     * @param source what is being read, for error messages
+     * @param symbols interns the class names and signatures, can be shared between files
+     * @param visitor gets the entries
+     * @throws IOException if the reader fails
+     */
+    public static void read(Reader reader, String source, SymbolTable symbols, Visitor visitor) throws IOException {
+        new SrgReader(visitor, source, symbols).readAll(reader);
+    }
+
+    private void readAll(Reader reader) throws IOException {
+        int start = 0, end = 0;
+        // a \n right after a \r does not end another line, even if the two were read separately
+        boolean lastCr = false;
+
+        while (true) {
+            // move the unfinished line to the front, and grow if it fills the whole buffer
+            if (start > 0) {
+                System.arraycopy(buf, start, buf, 0, end - start);
+                end -= start;
+                start = 0;
+            } else if (end == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+
+            int read = reader.read(buf, end, buf.length - end);
+            if (read < 0) {
+                break;
+            }
+
+            for (int i = end; i < end + read; i++) {
+                char c = buf[i];
+                if (c == '\n' && lastCr) {
+                    start = i + 1;
+                } else if (c == '\n' || c == '\r') {
+                    readLine(start, i);
+                    start = i + 1;
+                }
+                lastCr = c == '\r';
+            }
+            end += read;
+        }
+
+        if (start < end) {
+            readLine(start, end);
+        }
+    }
+
+    private void readLine(int start, int end) {
+        if (start == end || buf[start] == '#') {
+            return;
+        }
+
+        if (end - start < 4) {
+            throw invalid();
+        }
+
+        char t0 = buf[start], t1 = buf[start + 1];
+        int args = split(start + 4, end);
+
+        if (t0 == 'P' && t1 == 'K') {
+            checkArgs(args, 2);
+            visitor.visitPackage(symbol(0), symbol(1));
+        } else if (t0 == 'C' && t1 == 'L') {
+            checkArgs(args, 2);
+            visitor.visitClass(symbol(0), symbol(1));
+        } else if (t0 == 'F' && t1 == 'D') {
+            checkArgs(args, 2);
+            visitor.visitField(string(0), string(1));
+        } else if (t0 == 'M' && t1 == 'D') {
+            checkArgs(args, 4);
+            visitor.visitMethod(method(0, 1), method(2, 3));
+        } else {
+            throw invalid();
+        }
+    }
+
+    /**
+     * Finds the space separated arguments, only the first {@link #MAX_ARGS} are kept.
+     * @return how many there are, trailing empty ones not counted
+     */
+    private int split(int start, int end) {
+        int count = 0;
+        int nonEmpty = 0;
+        int argStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || buf[i] == ' ') {
+                if (count < MAX_ARGS) {
+                    argStarts[count] = argStart;
+                    argEnds[count] = i;
+                }
+                count++;
+                if (i > argStart) {
+                    nonEmpty = count;
+                    if (count >= MAX_ARGS) {
+                        break;
+                    }
+                }
+                argStart = i + 1;
+            }
+        }
+
+        return Math.min(nonEmpty, MAX_ARGS);
+    }
+
+    private void checkArgs(int args, int needed) {
+        if (args < needed) {
+            throw invalid();
+        }
+    }
+
+    private RuntimeException invalid() {
+        return new RuntimeException("Invalid SRG file: " + source);
+    }
+
+    private String string(int arg) {
+        return new String(buf, argStarts[arg], argEnds[arg] - argStarts[arg]);
+    }
+
+    /**
+     * Splits the method name from its owner, only the owner is interned.
+     */
+    private MethodData method(int nameArg, int sigArg) {
+        int start = argStarts[nameArg], end = argEnds[nameArg];
+        int slash = end - 1;
+        while (slash >= start && buf[slash] != '/') {
+            slash--;
+        }
+
+        String owner = slash < start ? null : symbols.intern(buf, start, slash);
+        String name = new String(buf, slash + 1, end - slash - 1);
+        return new MethodData(owner, name, symbol(sigArg));
+    }
+
+    private String symbol(int arg) {
+        return symbols.intern(buf, argStarts[arg], argEnds[arg]);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.util.data;
+
+/**
+ * Interns strings without creating them first, they are looked up straight from a char range.
+ * Unlike {@link String#intern()} the strings only live as long as the table.
+ * Not thread safe.
+ */
+public final class SymbolTable {
+    private String[] strings = new String[1024];
+    private int[] hashes = new int[1024];
+    private int size;
+
+    /**
+     * @return the string with the given chars, the same instance every time
+     */
+    public String intern(char[] chars, int start, int end) {
+        // same as String.hashCode()
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + chars[i];
+        }
+
+        int slot = find(hash, chars, start, end, null);
+        if (strings[slot] != null) {
+            return strings[slot];
+        }
+        return add(slot, hash, new String(chars, start, end - start));
+    }
+
+    /**
+     * @return the string equal to the given one, the same instance every time
+     */
+    public String intern(String str) {
+        int hash = str.hashCode();
+        int slot = find(hash, null, 0, 0, str);
+        if (strings[slot] != null) {
+            return strings[slot];
+        }
+        return add(slot, hash, str);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the slot of the string, or the empty slot where it belongs
+     */
+    private int find(int hash, char[] chars, int start, int end, String other) {
+        int mask = strings.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        for (String str; (str = strings[slot]) != null; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && (other != null ? str.equals(other) : equals(str, chars, start, end))) {
+                break;
+            }
+        }
+        return slot;
+    }
+
+    private String add(int slot, int hash, String str) {
+        strings[slot] = str;
+        hashes[slot] = hash;
+
+        // keep the table at most half full
+        if (++size * 2 > strings.length) {
+            rehash();
+        }
+        return str;
+    }
+
+    private void rehash() {
+        String[] oldStrings = strings;
+        int[] oldHashes = hashes;
+        strings = new String[oldStrings.length * 2];
+        hashes = new int[oldStrings.length * 2];
+
+        int mask = strings.length - 1;
+        for (int i = 0; i < oldStrings.length; i++) {
+            if (oldStrings[i] != null) {
+                int slot = (oldHashes[i] ^ (oldHashes[i] >>> 16)) & mask;
+                while (strings[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                strings[slot] = oldStrings[i];
+                hashes[slot] = oldHashes[i];
+            }
+        }
+    }
+
+    private static boolean equals(String str, char[] chars, int start, int end) {
+        if (str.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < str.length(); i++) {
+            if (str.charAt(i) != chars[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -255,6 +255,39 @@ public class McpCleanup
     // 5.8119...F to ((float)Math.PI * 185F / 100F)
     public static final Pattern CLEANUP_185pi100F = Pattern.compile("0\\.8119[0-9]*[Ff]");
 
+    /**
+     * The replacements of the constant patterns above. Each one matches a prefix, any amount of digits, and one of the suffix chars.
+     * { prefix, suffixes, replacement }
+     */
+    private static final String[][] CONSTANTS = {
+            { "3.1415", "Dd", "Math.PI" },
+            { "3.1415", "Ff", "(float)Math.PI" },
+            { "6.2831", "Dd", "(Math.PI * 2D)" },
+            { "6.2831", "Ff", "((float)Math.PI * 2F)" },
+            { "1.5707", "Dd", "(Math.PI / 2D)" },
+            { "1.5707", "Ff", "((float)Math.PI / 2F)" },
+            { "4.7123", "Dd", "(Math.PI * 3D / 2D)" },
+            { "4.7123", "Ff", "((float)Math.PI * 3F / 2F)" },
+            { "0.7853", "Dd", "(Math.PI / 4D)" },
+            { "0.7853", "Ff", "((float)Math.PI / 4F)" },
+            { "0.6283", "Dd", "(Math.PI / 5D)" },
+            { "0.6283", "Ff", "((float)Math.PI / 5F)" },
+            { "57.295", "Dd", "(180D / Math.PI)" },
+            { "57.295", "Ff", "(180F / (float)Math.PI)" },
+            { "0.6981", "Dd", "(Math.PI * 2D / 9D)" },
+            { "0.6981", "Ff", "((float)Math.PI * 2F / 9F)" },
+            { "0.3141", "Dd", "(Math.PI / 10D)" },
+            { "0.3141", "Ff", "((float)Math.PI / 10F)" },
+            { "1.2566", "Dd", "(Math.PI * 2D / 5D)" },
+            { "1.2566", "Ff", "((float)Math.PI * 2F / 5F)" },
+            { "0.21991", "Dd", "(Math.PI * 7D / 100D)" },
+            { "0.21991", "Ff", "((float)Math.PI * 7F / 100F)" },
+            { "5.8119", "Dd", "(Math.PI * 185D / 100D)" },
+            { "0.8119", "Ff", "((float)Math.PI * 185F / 100F)" },
+    };
+
+    private static final String CHARVAL_START = "Character.valueOf('";
+
     public static String cleanup(String text)
     {
         // simple replacements
@@ -266,57 +299,175 @@ public class McpCleanup
         text = CLEANUP_blockstarts.matcher(text).replaceAll("");
         text = CLEANUP_blockends.matcher(text).replaceAll("");
         text = CLEANUP_gl.matcher(text).replaceAll("");
-        text = CLEANUP_maxD.matcher(text).replaceAll("Double.MAX_VALUE");
+
+        // constants, unicode chars and Character.valueOf
+        text = cleanupConstants(text);
     
-        // unicode chars
+        return text;
+    }
+
+    /**
+     * Does the same as running {@link #CLEANUP_maxD}, {@link #CLEANUP_unicode}, {@link #CLEANUP_charval} and all the PI constant
+     * patterns one after the other, but in two passes over the text instead of 27.
+     * The first pass does the literals, the second the PI constants, since the numbers the unicode chars are turned into may be
+     * part of a constant afterwards. Within each pass no match can overlap or create another one, so the result is exactly the same.
+     *
+     * @param text Full file as a string
+     * @return Full file as a string with the constants replaced.
+     */
+    public static String cleanupConstants(String text)
+    {
+        return replacePiConstants(replaceLiterals(text));
+    }
+
+    private static String replaceLiterals(String text)
+    {
+        StringBuilder out = new StringBuilder(text.length());
+        int length = text.length();
+        int i = 0;
+
+        while (i < length)
         {
-            Matcher matcher = CLEANUP_unicode.matcher(text);
-            int val;
-            StringBuffer buffer = new StringBuffer(text.length());
-    
-            while (matcher.find())
+            char c = text.charAt(i);
+            int end = -1;
+
+            if (c == '\'' && i + 7 < length && text.charAt(i + 1) == '\\' && text.charAt(i + 2) == 'u' && text.charAt(i + 7) == '\'' && isHex(text, i + 3, i + 7))
+            {
+                // unicode chars, work around the replace('\u00a7', '$') call in MinecraftServer and a couple of '\u0000'
+                end = i + 8;
+                int val = Integer.parseInt(text.substring(i + 3, i + 7), 16);
+                out.append(val > 255 ? Integer.toString(val) : text.substring(i, end));
+            }
+            else if (c == 'C' && text.startsWith(CHARVAL_START, i) && i + CHARVAL_START.length() + 2 < length
+                    && isCharvalChar(text.charAt(i + CHARVAL_START.length()))
+                    && text.charAt(i + CHARVAL_START.length() + 1) == '\'' && text.charAt(i + CHARVAL_START.length() + 2) == ')')
+            {
+                // charval.. its stupid.
+                end = i + CHARVAL_START.length() + 3;
+                out.append(text, i + CHARVAL_START.length() - 1, end - 1);
+            }
+            else if (c == '1')
             {
-                val = Integer.parseInt(matcher.group(1), 16);
-                // work around the replace('\u00a7', '$') call in MinecraftServer and a couple of '\u0000'
-                if (val > 255)
+                end = matchMaxD(text, i);
+                if (end > 0)
                 {
-                    matcher.appendReplacement(buffer, Matcher.quoteReplacement("" + val));
+                    out.append("Double.MAX_VALUE");
                 }
             }
-            matcher.appendTail(buffer);
-            text = buffer.toString();
+
+            if (end > 0)
+            {
+                i = end;
+            }
+            else
+            {
+                out.append(c);
+                i++;
+            }
         }
-    
-        // charval.. its stupid.
-        text = CLEANUP_charval.matcher(text).replaceAll("$1"); // TESTING NEEDED
-    
-        //		 pi?   true
-        text = CLEANUP_piD.matcher(text).replaceAll("Math.PI");
-        text = CLEANUP_piF.matcher(text).replaceAll("(float)Math.PI");
-        text = CLEANUP_2piD.matcher(text).replaceAll("(Math.PI * 2D)");
-        text = CLEANUP_2piF.matcher(text).replaceAll("((float)Math.PI * 2F)");
-        text = CLEANUP_pi2D.matcher(text).replaceAll("(Math.PI / 2D)");
-        text = CLEANUP_pi2F.matcher(text).replaceAll("((float)Math.PI / 2F)");
-        text = CLEANUP_3pi2D.matcher(text).replaceAll("(Math.PI * 3D / 2D)");
-        text = CLEANUP_3pi2F.matcher(text).replaceAll("((float)Math.PI * 3F / 2F)");
-        text = CLEANUP_pi4D.matcher(text).replaceAll("(Math.PI / 4D)");
-        text = CLEANUP_pi4F.matcher(text).replaceAll("((float)Math.PI / 4F)");
-        text = CLEANUP_pi5D.matcher(text).replaceAll("(Math.PI / 5D)");
-        text = CLEANUP_pi5F.matcher(text).replaceAll("((float)Math.PI / 5F)");
-        text = CLEANUP_180piD.matcher(text).replaceAll("(180D / Math.PI)");
-        text = CLEANUP_180piF.matcher(text).replaceAll("(180F / (float)Math.PI)");
-        text = CLEANUP_2pi9D.matcher(text).replaceAll("(Math.PI * 2D / 9D)");
-        text = CLEANUP_2pi9F.matcher(text).replaceAll("((float)Math.PI * 2F / 9F)");
-        text = CLEANUP_pi10D.matcher(text).replaceAll("(Math.PI / 10D)");
-        text = CLEANUP_pi10F.matcher(text).replaceAll("((float)Math.PI / 10F)");
-        text = CLEANUP_2pi5D.matcher(text).replaceAll("(Math.PI * 2D / 5D)");
-        text = CLEANUP_2pi5F.matcher(text).replaceAll("((float)Math.PI * 2F / 5F)");
-        text = CLEANUP_7pi100D.matcher(text).replaceAll("(Math.PI * 7D / 100D)");
-        text = CLEANUP_7pi100F.matcher(text).replaceAll("((float)Math.PI * 7F / 100F)");
-        text = CLEANUP_185pi100D.matcher(text).replaceAll("(Math.PI * 185D / 100D)");
-        text = CLEANUP_185pi100F.matcher(text).replaceAll("((float)Math.PI * 185F / 100F)");
-    
-        return text;
+
+        return out.toString();
+    }
+
+    private static String replacePiConstants(String text)
+    {
+        StringBuilder out = new StringBuilder(text.length());
+        int length = text.length();
+        int i = 0;
+
+        while (i < length)
+        {
+            char c = text.charAt(i);
+            int end = -1;
+
+            // every constant starts with a digit and a dot, apart from 57.295
+            if (c >= '0' && c <= '9' && i + 1 < length && (text.charAt(i + 1) == '.' || text.charAt(i + 1) == '7'))
+            {
+                for (String[] constant : CONSTANTS)
+                {
+                    end = matchConstant(text, i, constant[0], constant[1]);
+                    if (end > 0)
+                    {
+                        out.append(constant[2]);
+                        break;
+                    }
+                }
+            }
+
+            if (end > 0)
+            {
+                i = end;
+            }
+            else
+            {
+                out.append(c);
+                i++;
+            }
+        }
+
+        return out.toString();
+    }
+
+    private static boolean isHex(String text, int start, int end)
+    {
+        for (int i = start; i < end; i++)
+        {
+            char c = text.charAt(i);
+            if (!(c >= '0' && c <= '9') && !(c >= 'a' && c <= 'f') && !(c >= 'A' && c <= 'F'))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isCharvalChar(char c)
+    {
+        // what the . in the regex matches
+        return c != '\n' && c != '\r' && c != '\u0085' && c != '\u2028' && c != '\u2029';
+    }
+
+    private static int skipDigits(String text, int i)
+    {
+        while (i < text.length() && text.charAt(i) >= '0' && text.charAt(i) <= '9')
+        {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return the end of the match, or -1
+     */
+    private static int matchConstant(String text, int start, String prefix, String suffixes)
+    {
+        if (!text.startsWith(prefix, start))
+        {
+            return -1;
+        }
+
+        int i = skipDigits(text, start + prefix.length());
+        return i < text.length() && suffixes.indexOf(text.charAt(i)) >= 0 ? i + 1 : -1;
+    }
+
+    /**
+     * Same as {@link #CLEANUP_maxD}.
+     * @return the end of the match, or -1
+     */
+    private static int matchMaxD(String text, int start)
+    {
+        if (!text.startsWith("1.7976", start))
+        {
+            return -1;
+        }
+
+        int i = skipDigits(text, start + 6);
+        if (i + 5 < text.length() && (text.charAt(i) == 'E' || text.charAt(i) == 'e') && text.startsWith("+308", i + 1))
+        {
+            char suffix = text.charAt(i + 5);
+            return suffix == 'D' || suffix == 'd' ? i + 6 : -1;
+        }
+        return -1;
     }
 
     /**
@@ -46,6 +46,8 @@ import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
+import net.minecraftforge.gradle.util.data.MappingTable;
+
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.FieldVisitor;
@@ -69,6 +71,8 @@ public class ReobfExceptor
     public File methodCSV;
     public File fieldCSV;
     public File excConfig;
+    /** where the csv snapshots are kept, see {@link MappingTable#load(File, File)} */
+    public File snapshotDir;
     
     // state stuff
     Map<String, String> clsMap = Maps.newHashMap();
@@ -95,7 +99,7 @@ public class ReobfExceptor
      */
     public void doFirstThings() throws IOException
     {
-        Map<String, String> csvData = readCSVs();
+        List<MappingTable> csvData = readCSVs();
         JarInfo oldInfo = readJar(deobfJar);
         JarInfo newInfo = readJar(toReobfJar);
         
@@ -106,9 +110,9 @@ public class ReobfExceptor
     
     // Preliminary things here
     
-    private Map<String, String> readCSVs() throws IOException
+    private List<MappingTable> readCSVs() throws IOException
     {
-        final Map<String, String> csvData = Maps.newHashMap();
+        List<MappingTable> csvData = Lists.newArrayList();
         File[] csvs = new File[]
         {
             fieldCSV == null ? null : fieldCSV,
@@ -118,18 +122,9 @@ public class ReobfExceptor
         for (File f : csvs)
         {
             if (f == null) continue;
-           
-            Files.readLines(f, Charset.defaultCharset(), new LineProcessor<Object>()
-            {
-                @Override
-                public boolean processLine(String line) throws IOException
-                {
-                    String[] s = line.split(",");
-                    csvData.put(s[0], s[1]);
-                    return true;
-                }
-                @Override public Object getResult() { return null; }
-            });
+
+            // later files win, so they are asked first
+            csvData.add(0, MappingTable.load(f, snapshotDir));
         }
         
         return csvData;
@@ -137,14 +132,21 @@ public class ReobfExceptor
     
     // ACTUAL things here...
     
-    private void renameAccess(Map<String, AccessInfo> data, Map<String, String> csvData) throws IOException
+    private void renameAccess(Map<String, AccessInfo> data, List<MappingTable> csvData) throws IOException
     {
         for (AccessInfo info : data.values())
         {
             for (Insn i : info.insns)
             {
-                String tmp = csvData.get(i.name);
-                i.name = tmp == null ? i.name : tmp;
+                for (MappingTable table : csvData)
+                {
+                    String tmp = table.get(i.name);
+                    if (tmp != null)
+                    {
+                        i.name = tmp;
+                        break;
+                    }
+                }
             }
         }
     }
@@ -0,0 +1,361 @@
+/*
+ * A Gradle plugin for the creation of Minecraft mods and MinecraftForge plugins.
+ * Copyright (C) 2013 Minecraft Forge
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package net.minecraftforge.gradle.util.mcp;
+
+import java.nio.CharBuffer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.minecraftforge.gradle.common.Constants;
+import net.minecraftforge.gradle.util.data.MappingTable;
+
+/**
+ * Replaces the SRG names of methods, fields and parameters in source files with their MCP names, and optionally adds their javadocs.
+ * Each file is scanned once, the SRG names are recognised by hand instead of with a regex.
+ * The output is the same as splitting the file into lines, replacing every match of
+ * <code>func_[0-9]+_[a-zA-Z_]+|field_[0-9]+_[a-zA-Z_]+|p_[\w]+_\d+_\b</code> in each and joining them with {@link Constants#NEWLINE}.
+ * Instances are immutable and can be used by multiple threads at once.
+ */
+public class SrgSourceRemapper
+{
+    private static final Pattern            METHOD  = Pattern.compile("^((?: {4})+|\\t+)(?:[\\w$.\\[\\]]+ )+(func_[0-9]+_[a-zA-Z_]+)\\(");
+    private static final Pattern            FIELD   = Pattern.compile("^((?: {4})+|\\t+)(?:[\\w$.\\[\\]]+ )+(field_[0-9]+_[a-zA-Z_]+) *(?:=|;)");
+
+    private final MappingTable              methods;
+    private final MappingTable              fields;
+    private final MappingTable              params;
+    private final boolean                   javadocs;
+
+    private final ThreadLocal<StringBuilder> buffers = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue()
+        {
+            return new StringBuilder();
+        }
+    };
+
+    /**
+     * @param methods srg-&gt;mcp names of methods
+     * @param fields srg-&gt;mcp names of fields
+     * @param params srg-&gt;mcp names of parameters
+     * @param javadocs if the docs of the methods and fields should be added above their declarations
+     */
+    public SrgSourceRemapper(MappingTable methods, MappingTable fields, MappingTable params, boolean javadocs)
+    {
+        this.methods = methods;
+        this.fields = fields;
+        this.params = params;
+        this.javadocs = javadocs;
+    }
+
+    /**
+     * Remaps a whole source file.
+     * @param text the source file
+     * @return the remapped source file
+     */
+    public String remap(String text)
+    {
+        StringBuilder out = buffers.get();
+        out.setLength(0);
+        remap(text, out);
+        String result = out.toString();
+
+        // dont keep huge buffers around
+        if (out.capacity() > 1 << 20)
+        {
+            buffers.remove();
+        }
+
+        return result;
+    }
+
+    /**
+     * Remaps a whole source file.
+     * @param text the source file
+     * @param out the remapped file is appended to this
+     */
+    public void remap(String text, StringBuilder out)
+    {
+        int length = text.length();
+        int pos = 0;
+
+        // where the annotations right above the current line start, or -1
+        int annotationsStart = -1;
+
+        while (pos < length)
+        {
+            int end = pos;
+            while (end < length && text.charAt(end) != '\n' && text.charAt(end) != '\r')
+            {
+                end++;
+            }
+
+            if (pos > 0)
+            {
+                out.append(Constants.NEWLINE);
+            }
+
+            int lineStart = out.length();
+
+            if (javadocs)
+            {
+                String javadoc = findJavadoc(text, pos, end);
+                if (javadoc != null)
+                {
+                    javadoc += Constants.NEWLINE;
+                    if (annotationsStart < 0)
+                    {
+                        out.append(javadoc);
+                    }
+                    else
+                    {
+                        out.insert(annotationsStart, javadoc);
+                        annotationsStart += javadoc.length();
+                    }
+                    lineStart = out.length();
+                }
+            }
+
+            remapLine(text, pos, end, out);
+
+            if (isAnnotation(out, lineStart))
+            {
+                if (annotationsStart < 0)
+                {
+                    annotationsStart = lineStart;
+                }
+            }
+            else
+            {
+                annotationsStart = -1;
+            }
+
+            // \r\n is a single line break
+            pos = end + 1;
+            if (end + 1 < length && text.charAt(end) == '\r' && text.charAt(end + 1) == '\n')
+            {
+                pos++;
+            }
+        }
+    }
+
+    private void remapLine(String text, int start, int end, StringBuilder out)
+    {
+        int copied = start;
+        int i = start;
+
+        while (i < end)
+        {
+            char c = text.charAt(i);
+            int tokenEnd = -1;
+            MappingTable names = null;
+
+            if (c == 'f')
+            {
+                tokenEnd = matchMember(text, i, end, "func_");
+                names = methods;
+                if (tokenEnd < 0)
+                {
+                    tokenEnd = matchMember(text, i, end, "field_");
+                    names = fields;
+                }
+            }
+            else if (c == 'p')
+            {
+                tokenEnd = matchParam(text, i, end);
+                names = params;
+            }
+
+            if (tokenEnd < 0)
+            {
+                i++;
+                continue;
+            }
+
+            int entry = names.find(text, i, tokenEnd);
+            out.append(text, copied, i);
+            if (entry >= 0)
+            {
+                names.appendName(entry, out);
+            }
+            else
+            {
+                out.append(text, i, tokenEnd);
+            }
+            i = copied = tokenEnd;
+        }
+
+        out.append(text, copied, end);
+    }
+
+    /**
+     * Matches <code>prefix[0-9]+_[a-zA-Z_]+</code>.
+     * @return the end of the match, or -1
+     */
+    private static int matchMember(String text, int start, int end, String prefix)
+    {
+        if (!text.startsWith(prefix, start))
+        {
+            return -1;
+        }
+
+        int i = start + prefix.length();
+        int digits = i;
+        while (i < end && isDigit(text.charAt(i)))
+        {
+            i++;
+        }
+
+        if (i == digits || i >= end || text.charAt(i) != '_')
+        {
+            return -1;
+        }
+
+        int suffix = ++i;
+        while (i < end && (isLetter(text.charAt(i)) || text.charAt(i) == '_'))
+        {
+            i++;
+        }
+
+        return i == suffix ? -1 : i;
+    }
+
+    /**
+     * Matches <code>p_[\w]+_\d+_\b</code>. The match can only end where the word ends,
+     * so this finds the end of the word and checks that it ends like a parameter.
+     * @return the end of the match, or -1
+     */
+    private static int matchParam(String text, int start, int end)
+    {
+        if (start + 1 >= end || text.charAt(start + 1) != '_')
+        {
+            return -1;
+        }
+
+        int wordEnd = start + 2;
+        while (wordEnd < end && isWord(text.charAt(wordEnd)))
+        {
+            wordEnd++;
+        }
+
+        // ..._123_
+        if (wordEnd - 1 <= start + 2 || text.charAt(wordEnd - 1) != '_')
+        {
+            return -1;
+        }
+
+        int digits = wordEnd - 1;
+        while (digits > start + 2 && isDigit(text.charAt(digits - 1)))
+        {
+            digits--;
+        }
+
+        // at least one digit, and at least one word char between the p_ and the _ before the digits
+        if (digits == wordEnd - 1 || digits - 1 <= start + 2 || text.charAt(digits - 1) != '_')
+        {
+            return -1;
+        }
+
+        return isBoundary(text, wordEnd) ? wordEnd : -1;
+    }
+
+    /**
+     * Same as a \b right after an underscore, the way Java 8 regexes see it: any unicode letter or digit continues the word.
+     */
+    private static boolean isBoundary(String text, int index)
+    {
+        if (index >= text.length())
+        {
+            return true;
+        }
+
+        int cp = text.codePointAt(index);
+        return !(Character.isLetterOrDigit(cp) || cp == '_');
+    }
+
+    private static boolean isDigit(char c)
+    {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLetter(char c)
+    {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isWord(char c)
+    {
+        return isDigit(c) || isLetter(c) || c == '_';
+    }
+
+    private static boolean isAnnotation(StringBuilder out, int lineStart)
+    {
+        for (int i = lineStart; i < out.length(); i++)
+        {
+            char c = out.charAt(i);
+            if (c > ' ')
+            {
+                return c == '@';
+            }
+        }
+        return false;
+    }
+
+    private static boolean contains(String text, int start, int end, String token)
+    {
+        for (int i = start; i + token.length() <= end; i++)
+        {
+            if (text.startsWith(token, i))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the javadoc that belongs above the line, if the line declares a method or field.
+     * @return the complete javadoc, or null
+     */
+    private String findJavadoc(String text, int start, int end)
+    {
+        if (contains(text, start, end, "func_"))
+        {
+            Matcher matcher = METHOD.matcher(CharBuffer.wrap(text, start, end));
+            if (matcher.find())
+            {
+                int entry = methods.find(text, start + matcher.start(2), start + matcher.end(2));
+                return entry < 0 || !methods.hasDoc(entry) ? null : JavadocAdder.buildJavadoc(matcher.group(1), methods.getDoc(entry), true);
+            }
+        }
+
+        if (contains(text, start, end, "field_"))
+        {
+            Matcher matcher = FIELD.matcher(CharBuffer.wrap(text, start, end));
+            if (matcher.find())
+            {
+                int entry = fields.find(text, start + matcher.start(2), start + matcher.end(2));
+                return entry < 0 || !fields.hasDoc(entry) ? null : JavadocAdder.buildJavadoc(matcher.group(1), fields.getDoc(entry), false);
+            }
+        }
+
+        return null;
+    }
+}